@@ -0,0 +1,123 @@
+package application;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import model.SeatAllocationStrategy;
+import model.SeatMap;
+
+/**
+ * A benchmark of the {@link SeatAllocationStrategy seat allocation
+ * strategies}. The benchmark runs in memory and does not need a database.
+ * <p>
+ * For each strategy, N random bookings (grouped or not) are performed; random
+ * cancellations keep the occupancy of the venue around a target value. The
+ * latency of each allocation is recorded. Then a series of grouped bookings
+ * of random sizes is tried, each on a copy of the fragmented venue, and the
+ * proportion of these bookings that succeed is reported: the less the
+ * strategy fragments the venue, the higher this rate. Every strategy is
+ * probed with the same number of bookings.
+ */
+public class AllocationBenchmark {
+
+  //
+  // CONSTANTS
+  //
+  private static final int DEFAULT_SEATS = 100000;
+  private static final int DEFAULT_BOOKINGS = 50000;
+  private static final double DEFAULT_OCCUPANCY = 0.9;
+  private static final int MAX_GROUP = 10;
+  private static final int PROBES = 1000;
+  private static final long SEED = 42;
+
+  //
+  // HELPER METHODS
+  //
+  /**
+   * Runs the benchmark of the specified strategy and prints its results.
+   *
+   * @param strategy the strategy to benchmark
+   * @param seats the number of seats of the venue
+   * @param count the number of random bookings to perform
+   * @param occupancy the occupancy above which bookings are cancelled
+   */
+  private static void run(SeatAllocationStrategy strategy, int seats, int count, double occupancy) {
+    Random random = new Random(SEED);
+    SeatMap map = new SeatMap(1, seats);
+    for (int seat = 1; seat <= seats; seat++) {
+      map.release(seat);
+    }
+
+    // réservations aléatoires; des annulations aléatoires maintiennent l'occupation
+    List<int[]> bookings = new ArrayList<int[]>();
+    long[] latencies = new long[count];
+    int target = (int) (seats * (1 - occupancy));
+    for (int i = 0; i < count; i++) {
+      while (map.getFreeCount() < target + MAX_GROUP && !bookings.isEmpty()) {
+        int[] cancelled = bookings.remove(random.nextInt(bookings.size()));
+        for (int seat : cancelled) {
+          map.release(seat);
+        }
+      }
+      int size = 1 + random.nextInt(MAX_GROUP);
+      boolean grouped = random.nextBoolean();
+      long start = System.nanoTime();
+      int[] booked = strategy.allocate(map, size, grouped);
+      latencies[i] = System.nanoTime() - start;
+      if (booked != null) {
+        bookings.add(booked);
+      }
+    }
+
+    // réservations groupées, chacune sur une copie de la salle fragmentée: toutes les stratégies
+    //  font le même nombre d'essais, et seuls comptent les échecs dus à la fragmentation
+    int succeeded = 0;
+    for (int i = 0; i < PROBES; i++) {
+      int size = 2 + random.nextInt(MAX_GROUP - 1);
+      if (strategy.allocate(map.copy(), size, true) != null) {
+        succeeded++;
+      }
+    }
+
+    Arrays.sort(latencies);
+    long total = 0;
+    for (long latency : latencies) {
+      total += latency;
+    }
+    String r = strategy + ": ";
+    r += "mean=" + (total / count / 1000.0) + "us";
+    r += ", p99=" + (latencies[(int) (count * 0.99)] / 1000.0) + "us";
+    r += ", grouped success=" + (succeeded * 100 / PROBES) + "%";
+    r += " (" + succeeded + "/" + PROBES + ")";
+    System.out.println(r);
+  }
+
+  //
+  // MAIN
+  //
+  /**
+   * Runs the benchmark.
+   *
+   * @param args
+   *          [seats [bookings [occupancy]]]
+   */
+  public static void main(String[] args) {
+    int seats = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_SEATS;
+    int count = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_BOOKINGS;
+    double occupancy = args.length > 2 ? Double.parseDouble(args[2]) : DEFAULT_OCCUPANCY;
+
+    System.out.println("Seat allocation benchmark: seats=" + seats + ", bookings=" + count
+            + ", occupancy=" + occupancy);
+    // un premier passage pour chauffer la JVM
+    for (SeatAllocationStrategy strategy : SeatAllocationStrategy.values()) {
+      run(strategy, Math.min(seats, 10000), Math.min(count, 5000), occupancy);
+    }
+    System.out.println("--");
+    for (SeatAllocationStrategy strategy : SeatAllocationStrategy.values()) {
+      run(strategy, seats, count, occupancy);
+    }
+  }
+
+}
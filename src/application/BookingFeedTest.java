@@ -0,0 +1,368 @@
+package application;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import model.BookingEvent;
+import model.BookingFeed;
+import model.BookingSubscriber;
+import model.NdjsonFileSubscriber;
+
+/**
+ * A stress test program for {@link BookingFeed}: several publishers share a
+ * small ring buffer, which wraps around many times, and the subscribers must
+ * receive every event, in sequence order and in the order of each publisher,
+ * despite a slow subscriber holding the publishers back and a subscriber
+ * joining mid-stream, and publishers racing the closing of the feed must
+ * neither lose events nor hang. It then checks that an
+ * {@link NdjsonFileSubscriber} restarted on the same directory continues the
+ * files instead of truncating them, and drops an incomplete line left by a
+ * crash. No database is needed.
+ */
+public class BookingFeedTest {
+
+  //
+  // CONSTANTS
+  //
+  private static final int MAX_PUBLISHERS = 8;
+  private static final int CAPACITY = 8;
+  private static final int MAX_EVENTS = 400000;
+  private static final int SLOW_EVERY = 20000;    // events between two pauses of the slow subscriber
+  private static final int FILE_EVENTS = 100;
+  private static final long SEGMENT_SIZE = 2000;  // characters
+  private static final int CLOSE_ROUNDS = 200;
+  private static final long JOIN_TIMEOUT = 5000;  // ms
+
+  //
+  // CLASS FIELDS
+  //
+  private static int testTotal = 0;
+  private static int testOK = 0;
+
+  //
+  // HELPER CLASSES
+  //
+  /**
+   * Checks the events it receives: sequence numbers without gaps, and the
+   * events of each publisher in the order they were published (the seat of
+   * an event is its rank among the events of its publisher).
+   */
+  static class Checker implements BookingSubscriber {
+
+    private final boolean fromStart;
+    private final boolean slow;
+    private final int[] lastRank = new int[MAX_PUBLISHERS];
+    private long first = -1;
+    private long next = -1;
+    private long received = 0;
+    private int errors = 0;
+    private volatile boolean closed = false;
+
+    Checker(boolean fromStart, boolean slow) {
+      this.fromStart = fromStart;
+      this.slow = slow;
+      Arrays.fill(lastRank, -1);
+    }
+
+    @Override
+    public void onEvent(BookingEvent event, boolean endOfBatch) throws Exception {
+      if (first == -1) {
+        first = event.getSequence();
+        next = first;
+      }
+      if (event.getSequence() != next) {
+        errors++;
+      }
+      next = event.getSequence() + 1;
+      int publisher = Integer.parseInt(event.getCustomer().substring(1));
+      int rank = event.getSeat(0);
+      // depuis le début, chaque événement d'un producteur suit le précédent; en cours de flux,
+      //  le premier reçu peut être quelconque
+      boolean ordered = fromStart || lastRank[publisher] != -1 ? rank == lastRank[publisher] + 1 : rank >= 0;
+      if (!ordered) {
+        errors++;
+      }
+      lastRank[publisher] = rank;
+      received++;
+      if (slow && received % SLOW_EVERY == 0) {
+        Thread.sleep(1);
+      }
+    }
+
+    @Override
+    public void close() {
+      closed = true;
+    }
+
+    @Override
+    public String toString() {
+      return "Checker{" + "first=" + first + ", received=" + received + '}';
+    }
+  }
+
+  /**
+   * Publishes the specified number of events, the seat of each event being
+   * its rank.
+   */
+  static class Publisher extends Thread {
+
+    private final BookingFeed feed;
+    private final int id;
+    private final int count;
+
+    Publisher(BookingFeed feed, int id, int count) {
+      this.feed = feed;
+      this.id = id;
+      this.count = count;
+    }
+
+    @Override
+    public void run() {
+      for (int rank = 0; rank < count; rank++) {
+        feed.publish(BookingEvent.Type.BOOKING, "p" + id, new int[]{rank}, new int[]{1}, 1);
+      }
+    }
+  }
+
+  /**
+   * Publishes events, the seat of each event being its rank, until the feed
+   * is closed, and counts the events published.
+   */
+  static class Racer extends Thread {
+
+    private final BookingFeed feed;
+    private final int id;
+    private int published = 0;
+
+    Racer(BookingFeed feed, int id) {
+      this.feed = feed;
+      this.id = id;
+    }
+
+    @Override
+    public void run() {
+      try {
+        for (int rank = 0; ; rank++) {
+          feed.publish(BookingEvent.Type.BOOKING, "p" + id, new int[]{rank}, new int[]{1}, 1);
+          published++;
+        }
+      } catch (IllegalStateException e) {
+        // flux fermé
+      }
+    }
+  }
+
+  //
+  // HELPER METHODS
+  //
+  /**
+   * Checks whether the specified test was successful and updates the fields
+   * <code>testTotal</code> and <code>testOK</code> accordingly.
+   *
+   * @param test
+   *          the name of the test
+   * @param ok
+   *          <code>true</code> if the test was sucessful and <code>false</code>
+   *          otherwise
+   */
+  private static void check(String test, boolean ok) {
+    testTotal += 1;
+    System.out.print(test + ": ");
+    if (ok) {
+      testOK += 1;
+      System.out.println("ok");
+    } else {
+      System.out.println("FAILED");
+    }
+  }
+
+  // Publie les événements d'un client dans le flux, puis le ferme
+  private static void publish(BookingFeed feed, int count) throws InterruptedException {
+    for (int i = 0; i < count; i++) {
+      feed.publish(BookingEvent.Type.BOOKING, "p0", new int[]{i}, new int[]{1}, 1);
+    }
+    feed.close();
+  }
+
+  // Lit les numéros de séquence de tous les segments, dans l'ordre des segments; -1 pour une
+  //  ligne qui n'est pas un objet JSON complet
+  private static List<Long> readSequences(File directory) throws IOException {
+    String[] names = directory.list();
+    Arrays.sort(names);
+    List<Long> sequences = new ArrayList<>();
+    for (String name : names) {
+      for (String line : Files.readAllLines(new File(directory, name).toPath(), StandardCharsets.UTF_8)) {
+        boolean complete = line.lastIndexOf("{\"seq\":") == 0 && line.endsWith("}");
+        sequences.add(complete ? Long.parseLong(line.substring("{\"seq\":".length(), line.indexOf(','))) : -1);
+      }
+    }
+    return sequences;
+  }
+
+  // Vrai si les segments contiennent exactement les événements 0 à count - 1, dans l'ordre
+  private static boolean continuous(File directory, int count) throws IOException {
+    List<Long> sequences = readSequences(directory);
+    boolean continued = sequences.size() == count;
+    for (int i = 0; i < sequences.size(); i++) {
+      continued &= sequences.get(i) == i;
+    }
+    return continued;
+  }
+
+  // Ajoute une ligne incomplète à la fin du segment, comme un arrêt brutal
+  private static void crash(File segment, long sequence) throws IOException {
+    try (OutputStream out = new FileOutputStream(segment, true)) {
+      out.write(("{\"seq\":" + sequence + ",\"ty").getBytes(StandardCharsets.UTF_8));
+    }
+  }
+
+  // Redémarre un flux sur le répertoire et y publie des événements
+  private static void restart(File directory, int count) throws IOException, InterruptedException {
+    BookingFeed feed = new BookingFeed(CAPACITY, NdjsonFileSubscriber.nextSequence(directory));
+    feed.subscribe(new NdjsonFileSubscriber(directory, SEGMENT_SIZE));
+    publish(feed, count);
+  }
+
+  //
+  // MAIN
+  //
+  /**
+   * Runs the booking feed test program.
+   *
+   * @param args
+   *          unused
+   */
+  public static void main(String[] args) {
+
+    File directory = null;
+    try {
+
+      // producteurs concurrents sur un petit tampon, avec un abonné lent
+      BookingFeed feed = new BookingFeed(CAPACITY);
+      Checker all = new Checker(true, true);
+      feed.subscribe(all);
+      Publisher[] publishers = new Publisher[MAX_PUBLISHERS];
+      long start = System.nanoTime();
+      for (int i = 0; i < MAX_PUBLISHERS; i++) {
+        publishers[i] = new Publisher(feed, i, MAX_EVENTS / MAX_PUBLISHERS);
+        publishers[i].start();
+      }
+
+      // un abonné rejoint le flux à mi-parcours; le retard ne dépasse jamais le tampon, plus
+      //  les événements dont le numéro est attribué mais dont le producteur attend un slot
+      long maxLag = 0;
+      while (feed.getPublishedCount() < MAX_EVENTS / 2) {
+        maxLag = Math.max(maxLag, feed.getLag());
+        Thread.yield();
+      }
+      Checker late = new Checker(false, false);
+      feed.subscribe(late);
+      for (Publisher publisher : publishers) {
+        while (publisher.isAlive()) {
+          maxLag = Math.max(maxLag, feed.getLag());
+          publisher.join(1);
+        }
+      }
+      feed.close();
+      long time = System.nanoTime() - start;
+
+      check("every event received", all.received == MAX_EVENTS && all.first == 0 && all.closed);
+      check("events in order", all.errors == 0);
+      check("back-pressure", maxLag > 0 && maxLag <= CAPACITY + MAX_PUBLISHERS);
+      check("mid-stream subscription", late.first >= MAX_EVENTS / 2 && late.errors == 0
+              && late.received == MAX_EVENTS - late.first && late.closed);
+      boolean rejected = false;
+      try {
+        feed.publish(BookingEvent.Type.BOOKING, "p0", new int[]{0}, new int[]{1}, 1);
+      } catch (IllegalStateException e) {
+        rejected = true;
+      }
+      check("closed feed", rejected);
+      System.out.println("throughput: publishers=" + MAX_PUBLISHERS + ", capacity=" + CAPACITY + ", "
+              + (MAX_EVENTS * 1000000000L / time) + " events/s");
+
+      // fermeture pendant que des producteurs publient: tout événement publié est reçu, aucun
+      //  producteur ne reste bloqué
+      boolean delivered = true;
+      boolean released = true;
+      for (int round = 0; round < CLOSE_ROUNDS; round++) {
+        feed = new BookingFeed(2);
+        Checker checker = new Checker(true, false);
+        feed.subscribe(checker);
+        Racer[] racers = new Racer[MAX_PUBLISHERS / 2];
+        for (int i = 0; i < racers.length; i++) {
+          racers[i] = new Racer(feed, i);
+          racers[i].start();
+        }
+        Thread.sleep(round % 2);
+        feed.close();
+        long total = 0;
+        for (Racer racer : racers) {
+          racer.join(JOIN_TIMEOUT);
+          released &= !racer.isAlive();
+          total += racer.published;
+        }
+        delivered &= checker.received == total && checker.errors == 0 && checker.closed;
+      }
+      check("close while publishing: nothing lost", delivered);
+      check("close while publishing: no publisher stuck", released);
+
+      // un abonné fichier redémarré continue la séquence et les segments existants
+      directory = Files.createTempDirectory("feed").toFile();
+      feed = new BookingFeed(CAPACITY);
+      feed.subscribe(new NdjsonFileSubscriber(directory, SEGMENT_SIZE));
+      publish(feed, FILE_EVENTS);
+      long next = NdjsonFileSubscriber.nextSequence(directory);
+      check("next sequence", next == FILE_EVENTS && directory.list().length > 1);
+      feed = new BookingFeed(CAPACITY, next);
+      feed.subscribe(new NdjsonFileSubscriber(directory, SEGMENT_SIZE));
+      publish(feed, FILE_EVENTS);
+      check("restart continues the files", continuous(directory, 2 * FILE_EVENTS));
+
+      // une ligne incomplète, laissée par un arrêt brutal, est ignorée puis retirée au redémarrage
+      String[] names = directory.list();
+      Arrays.sort(names);
+      crash(new File(directory, names[names.length - 1]), 2 * FILE_EVENTS);
+      check("incomplete line ignored", NdjsonFileSubscriber.nextSequence(directory) == 2 * FILE_EVENTS);
+      restart(directory, FILE_EVENTS);
+      check("incomplete line removed", continuous(directory, 3 * FILE_EVENTS));
+      // arrêt brutal au tout début d'un segment: le segment redémarré porte le même nom
+      crash(new File(directory, String.format("bookings-%020d.ndjson", 3 * FILE_EVENTS)), 3 * FILE_EVENTS);
+      restart(directory, FILE_EVENTS);
+      check("segment with only an incomplete line", continuous(directory, 4 * FILE_EVENTS));
+
+    } catch (Exception e) {
+
+      System.err.println("test aborted: " + e);
+      e.printStackTrace();
+
+    } finally {
+
+      if (directory != null) {
+        for (File file : directory.listFiles()) {
+          file.delete();
+        }
+        directory.delete();
+      }
+
+    }
+
+    // print test results
+    if (testTotal == 0) {
+      System.out.println("no test performed");
+    } else {
+      String r = "test results: ";
+      r += "total=" + testTotal;
+      r += ", ok=" + testOK + " (" + ((testOK * 100) / testTotal) + "%)";
+      System.out.println(r);
+    }
+
+  }
+}
@@ -0,0 +1,160 @@
+package application;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import model.BookingInfo;
+
+/**
+ * A benchmark of the memory footprint of {@link BookingInfo}. The benchmark
+ * runs in memory and does not need a database.
+ * <p>
+ * For several booking sizes, grouped (consecutive seats) or not (every other
+ * seat), the benchmark builds many bookings from the seats returned by the
+ * allocator, as <code>DataAccess</code> does, and reports the number of bytes
+ * allocated per booking and the time taken to build and read it back. The
+ * compact representation is compared with the former one, which held boxed
+ * seat numbers in a list and a <code>Date</code>.
+ * <p>
+ * The allocated bytes are measured with
+ * <code>com.sun.management.ThreadMXBean</code>, available on HotSpot JVMs.
+ */
+public class BookingInfoBenchmark {
+
+  //
+  // CONSTANTS
+  //
+  private static final int DEFAULT_BOOKINGS = 200000;
+  private static final int[] SIZES = {1, 4, 16, 64, 256};
+  private static final int FIRST_SEAT = 1000;   // au-delà du cache des Integer
+  private static final int RETAINED = 1024;
+
+  //
+  // HELPER CLASSES
+  //
+  /**
+   * The former representation of a booking.
+   */
+  private static final class LegacyBookingInfo {
+
+    private final String customer;
+    private final float amount;
+    private final Date date;
+    private final List<Integer> seats;
+
+    LegacyBookingInfo(String customer, float amount, Date date, List<Integer> seats) {
+      this.customer = customer;
+      this.amount = amount;
+      this.date = date;
+      this.seats = Collections.unmodifiableList(seats);
+    }
+  }
+
+  //
+  // CLASS FIELDS
+  //
+  private static final com.sun.management.ThreadMXBean THREADS
+          = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+  // les réservations construites restent atteignables, pour qu'elles ne soient pas éliminées
+  private static final Object[] retained = new Object[RETAINED];
+  private static long checksum = 0;
+
+  //
+  // HELPER METHODS
+  //
+  private static long allocatedBytes() {
+    return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+  private static void legacy(int[] seats, int count) {
+    for (int i = 0; i < count; i++) {
+      ArrayList<Integer> bookedSeats = new ArrayList<>(seats.length);
+      for (int seat : seats) {
+        bookedSeats.add(seat);
+      }
+      LegacyBookingInfo booking = new LegacyBookingInfo("customer", 50 * seats.length, new Date(), bookedSeats);
+      for (int seat : booking.seats) {
+        checksum += seat;
+      }
+      retained[i % RETAINED] = booking;
+    }
+  }
+
+  private static void compact(int[] seats, int count) {
+    for (int i = 0; i < count; i++) {
+      BookingInfo booking = new BookingInfo("customer", 5000L * seats.length, System.currentTimeMillis(), seats);
+      for (int s = 0; s < booking.getSeatCount(); s++) {
+        checksum += booking.getSeat(s);
+      }
+      retained[i % RETAINED] = booking;
+    }
+  }
+
+  /**
+   * Runs the benchmark of one representation and prints its results.
+   *
+   * @param name the name of the representation
+   * @param compact <code>true</code> for the compact representation,
+   * <code>false</code> for the former one
+   * @param seats the seats of each booking
+   * @param count the number of bookings to build
+   * @param print <code>true</code> to print the results
+   */
+  private static void run(String name, boolean compact, int[] seats, int count, boolean print) {
+    long bytes = allocatedBytes();
+    long start = System.nanoTime();
+    if (compact) {
+      compact(seats, count);
+    } else {
+      legacy(seats, count);
+    }
+    long time = System.nanoTime() - start;
+    bytes = allocatedBytes() - bytes;
+    if (print) {
+      System.out.println(String.format("  %-7s %8d bytes/booking %10.1f ns/booking",
+              name, bytes / count, (double) time / count));
+    }
+  }
+
+  //
+  // MAIN
+  //
+  /**
+   * Runs the benchmark.
+   *
+   * @param args
+   *          [bookings]
+   */
+  public static void main(String[] args) {
+    int count = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_BOOKINGS;
+    if (!THREADS.isThreadAllocatedMemorySupported()) {
+      System.err.println("allocated memory measurement not supported by this JVM");
+      System.exit(1);
+    }
+    THREADS.setThreadAllocatedMemoryEnabled(true);
+
+    System.out.println("BookingInfo benchmark: bookings=" + count);
+    for (int pass = 0; pass < 2; pass++) {
+      // un premier passage pour chauffer la JVM
+      boolean print = pass == 1;
+      for (int size : SIZES) {
+        for (int step = 1; step <= 2; step++) {
+          int[] seats = new int[size];
+          for (int i = 0; i < size; i++) {
+            seats[i] = FIRST_SEAT + i * step;
+          }
+          if (print) {
+            System.out.println(size + " seat(s), " + (step == 1 ? "grouped" : "scattered") + ":");
+          }
+          run("legacy", false, seats, count, print);
+          run("compact", true, seats, count, print);
+        }
+      }
+    }
+    System.out.println("(checksum " + checksum + ")");
+  }
+
+}
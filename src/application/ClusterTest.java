@@ -0,0 +1,227 @@
+package application;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import cluster.ClusterNode;
+import cluster.LocalTransport;
+import cluster.LocalMembership;
+import cluster.Membership;
+import cluster.MemorySeatStore;
+import model.DataAccess;
+
+/**
+ * A simple test program for the cluster mode (see {@link ClusterNode}). The
+ * nodes run in this JVM and share an in-memory seat store, so that no
+ * database is needed.
+ */
+public class ClusterTest {
+
+  //
+  // CONSTANTS
+  //
+  private static final int MAX_SEATS = 1000;
+  private static final int MAX_PARTITIONS = 10;
+  private static final int MAX_NODES = 3;
+  private static final int MAX_CUSTOMERS = 20;
+  private static final long TIMEOUT = 300;     // ms
+  private static final long HEARTBEAT = 50;    // ms
+
+  //
+  // CLASS FIELDS
+  //
+  private static int testTotal = 0;
+  private static int testOK = 0;
+
+  //
+  // HELPER METHODS
+  //
+  /**
+   * Checks whether the specified test was successful and updates the fields
+   * <code>testTotal</code> and <code>testOK</code> accordingly.
+   *
+   * @param test
+   *          the name of the test
+   * @param ok
+   *          <code>true</code> if the test was sucessful and <code>false</code>
+   *          otherwise
+   */
+  private synchronized static void check(String test, boolean ok) {
+    testTotal += 1;
+    System.out.print(test + ": ");
+    if (ok) {
+      testOK += 1;
+      System.out.println("ok");
+    } else {
+      System.out.println("FAILED");
+    }
+  }
+
+  /**
+   * Tells whether every partition is owned by the same node, as seen from
+   * every specified node.
+   *
+   * @param nodes the nodes
+   * @return <code>true</code> if the nodes agree on the owners
+   */
+  private static boolean agree(List<ClusterNode> nodes) {
+    for (int p = 0; p < MAX_PARTITIONS; p++) {
+      String owner = nodes.get(0).getOwner(p);
+      for (ClusterNode node : nodes) {
+        if (owner == null || !owner.equals(node.getOwner(p))) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  //
+  // MAIN
+  //
+  /**
+   * Runs the cluster test program.
+   *
+   * @param args
+   *          not used
+   */
+  public static void main(String[] args) {
+
+    MemorySeatStore store = new MemorySeatStore(1, MAX_SEATS);
+    Membership membership = new LocalMembership(TIMEOUT);
+    LocalTransport transport = new LocalTransport();
+    final List<ClusterNode> nodes = new ArrayList<ClusterNode>();
+    try {
+
+      // start the nodes
+      for (int i = 0; i < MAX_NODES; i++) {
+        ClusterNode node = new ClusterNode("node#" + i, 1, MAX_SEATS, MAX_PARTITIONS, membership, transport, store);
+        node.start(HEARTBEAT);
+        nodes.add(node);
+      }
+
+      System.out.println("Running cluster tests...");
+      check("initial state", nodes.get(0).getAvailableCount() == MAX_SEATS);
+      check("owners agreed", agree(nodes));
+
+      int[] booked = nodes.get(1).book("alice", 2, 2, true);
+      check("grouped booking", booked != null && booked.length == 4 && booked[3] == booked[0] + 3);
+      check("booking written through", booked != null && "alice".equals(store.getCustomer(booked[0])));
+      check("availability seen from every node", nodes.get(2).getAvailableCount() == MAX_SEATS - 4);
+      check("foreign cancellation ignored", nodes.get(0).cancel("bob", booked).length == 0);
+
+      // concurrent bookings through all the nodes: no seat may be booked twice
+      final int[][] results = new int[MAX_CUSTOMERS][];
+      List<Thread> threads = new ArrayList<Thread>();
+      for (int i = 0; i < MAX_CUSTOMERS; i++) {
+        final int customer = i;
+        Thread thread = new Thread() {
+          @Override
+          public void run() {
+            try {
+              results[customer] = nodes.get(customer % MAX_NODES).book("user#" + customer, 1, 4, customer % 2 == 0);
+            } catch (Exception e) {
+              System.err.println("unexpected exception: " + e);
+            }
+          }
+        };
+        threads.add(thread);
+        thread.start();
+      }
+      for (Thread thread : threads) {
+        thread.join();
+      }
+      boolean distinct = true;
+      boolean[] taken = new boolean[MAX_SEATS + 1];
+      for (int i = 0; i < MAX_CUSTOMERS; i++) {
+        for (int seat : results[i]) {
+          distinct &= !taken[seat] && ("user#" + i).equals(store.getCustomer(seat));
+          taken[seat] = true;
+        }
+      }
+      check("concurrent bookings", distinct);
+      int available = MAX_SEATS - 4 - 5 * MAX_CUSTOMERS;
+      check("availability after concurrent bookings", nodes.get(1).getAvailableCount() == available);
+
+      // crash of the owner of alice's partition: the partition is handed over
+      int partition = (booked[0] - 1) / (MAX_SEATS / MAX_PARTITIONS);
+      String owner = nodes.get(0).getOwner(partition);
+      ClusterNode crashed = null;
+      for (ClusterNode node : nodes) {
+        if (node.getId().equals(owner)) {
+          crashed = node;
+        }
+      }
+      crashed.halt();
+      nodes.remove(crashed);
+      Thread.sleep(TIMEOUT + 2 * HEARTBEAT);
+      check("failure detected", membership.getLiveNodes().size() == MAX_NODES - 1 && agree(nodes));
+      check("partition handed over", !owner.equals(nodes.get(0).getOwner(partition)));
+      check("state reloaded", nodes.get(0).getAvailableCount() == available);
+      check("cancellation after handover", nodes.get(1).cancel("alice", booked).length == 4);
+      check("booking after handover", nodes.get(0).book("carol", 0, MAX_SEATS / MAX_PARTITIONS / 2, false) != null);
+
+      // crash detected through the transport, before the timeout
+      ClusterNode other = nodes.remove(1);
+      other.halt();
+      check("unreachable node", nodes.get(0).getAvailableCount() == available + 4 - MAX_SEATS / MAX_PARTITIONS / 2
+              && membership.getLiveNodes().size() == 1);
+
+      // partitions of unequal sizes: none is empty, and every seat belongs to one of them
+      ClusterNode uneven = new ClusterNode("uneven", 1, 10, 7, new LocalMembership(TIMEOUT), new LocalTransport(),
+              new MemorySeatStore(1, 10));
+      uneven.start(HEARTBEAT);
+      check("uneven partitions", uneven.getAvailableCount() == 10);
+      boolean[] covered = new boolean[11];
+      int seatsBooked = 0;
+      for (int i = 0; i < 10; i++) {
+        int[] seats = uneven.book("user#" + i, 0, 1, false);
+        if (seats != null && seats.length == 1 && !covered[seats[0]]) {
+          covered[seats[0]] = true;
+          seatsBooked++;
+        }
+      }
+      check("every seat bookable", seatsBooked == 10 && uneven.getAvailableCount() == 0
+              && uneven.book("late", 0, 1, false) == null);
+      uneven.stop();
+
+      // a seat booked behind the owner's back is skipped, and the partition still books
+      MemorySeatStore shared = new MemorySeatStore(1, 4);
+      ClusterNode single = new ClusterNode("single", 1, 4, 1, new LocalMembership(TIMEOUT), new LocalTransport(),
+              shared);
+      single.start(HEARTBEAT);
+      check("partition loaded", single.getAvailableCount() == 4);
+      shared.book("outsider", 1, DataAccess.ADULT);
+      int[] first = single.book("b", 0, 1, false);
+      int[] second = single.book("c", 0, 1, false);
+      int[] third = single.book("d", 0, 1, false);
+      check("outside writer skipped", first != null && first[0] == 2 && second != null && second[0] == 3
+              && third != null && third[0] == 4 && "outsider".equals(shared.getCustomer(1)));
+      check("outside writer counted", single.getAvailableCount() == 0 && single.book("e", 0, 1, false) == null);
+      single.stop();
+
+    } catch (Exception e) {
+
+      System.err.println("test aborted: " + e);
+      e.printStackTrace();
+
+    } finally {
+
+      for (ClusterNode node : nodes) {
+        node.stop();
+      }
+
+    }
+
+    // print test results
+    if (testTotal == 0) {
+      System.out.println("no test performed");
+    } else {
+      String r = "test results: ";
+      r += "total=" + testTotal;
+      r += ", ok=" + testOK + " (" + ((testOK * 100) / testTotal) + "%)";
+      System.out.println(r);
+    }
+
+  }
+}
@@ -0,0 +1,203 @@
+package application;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import model.CustomerLocks;
+
+/**
+ * A test program for {@link CustomerLocks}: mutual exclusion of the
+ * operations mapped to the same stripe, contention metrics, and independence
+ * of different stripes. No database is needed.
+ */
+public class CustomerLocksTest {
+
+  //
+  // CONSTANTS
+  //
+  private static final int STRIPES = 16;
+  private static final int MAX_ITERATIONS = 20000;
+
+  //
+  // CLASS FIELDS
+  //
+  private static int testTotal = 0;
+  private static int testOK = 0;
+
+  //
+  // HELPER CLASSES
+  //
+  /**
+   * Emulates the operations of a customer: each iteration enters the critical
+   * section of the customer and records whether another thread was in it.
+   */
+  static class Worker extends Thread {
+
+    private final CustomerLocks locks;
+    private final String customer;
+    private final AtomicInteger inside;
+    private final CountDownLatch start;
+    private int overlaps = 0;
+
+    Worker(CustomerLocks locks, String customer, AtomicInteger inside, CountDownLatch start) {
+      this.locks = locks;
+      this.customer = customer;
+      this.inside = inside;
+      this.start = start;
+    }
+
+    @Override
+    public void run() {
+      try {
+        start.await();
+      } catch (InterruptedException e) {
+        return;
+      }
+      for (int i = 0; i < MAX_ITERATIONS; i++) {
+        locks.lock(customer);
+        try {
+          if (inside.incrementAndGet() != 1) {
+            overlaps++;
+          }
+          // un peu de travail dans la section critique, pour que l'autre thread attende
+          if (i % 100 == 0) {
+            Thread.yield();
+          }
+          inside.decrementAndGet();
+        } finally {
+          locks.unlock(customer);
+        }
+      }
+    }
+  }
+
+  //
+  // HELPER METHODS
+  //
+  /**
+   * Checks whether the specified test was successful and updates the fields
+   * <code>testTotal</code> and <code>testOK</code> accordingly.
+   *
+   * @param test
+   *          the name of the test
+   * @param ok
+   *          <code>true</code> if the test was sucessful and <code>false</code>
+   *          otherwise
+   */
+  private static void check(String test, boolean ok) {
+    testTotal += 1;
+    System.out.print(test + ": ");
+    if (ok) {
+      testOK += 1;
+      System.out.println("ok");
+    } else {
+      System.out.println("FAILED");
+    }
+  }
+
+  // Retourne un client, différent du client spécifié, dont le verrou est (ou non) le même
+  private static String customerOn(CustomerLocks locks, String customer, boolean sameStripe) {
+    for (int i = 0; ; i++) {
+      String other = "customer#" + i;
+      if (!other.equals(customer) && (locks.stripeOf(other) == locks.stripeOf(customer)) == sameStripe) {
+        return other;
+      }
+    }
+  }
+
+  //
+  // MAIN
+  //
+  /**
+   * Runs the customer locks test program.
+   *
+   * @param args
+   *          unused
+   */
+  public static void main(String[] args) {
+
+    try {
+
+      check("stripes rounded up", new CustomerLocks(5).getStripeCount() == 8
+              && new CustomerLocks(1).getStripeCount() == 1);
+
+      // deux threads sur le même verrou: l'un attend l'autre
+      final CustomerLocks locks = new CustomerLocks(STRIPES);
+      final int stripe = locks.stripeOf("alice");
+      locks.lock("alice");
+      final CountDownLatch acquired = new CountDownLatch(1);
+      Thread waiter = new Thread() {
+        @Override
+        public void run() {
+          locks.lock("alice");
+          acquired.countDown();
+          locks.unlock("alice");
+        }
+      };
+      waiter.start();
+      while (locks.getQueueLength(stripe) == 0 && waiter.isAlive()) {
+        Thread.sleep(1);
+      }
+      check("second thread waits", locks.getQueueLength(stripe) == 1 && acquired.getCount() == 1);
+      Thread.sleep(10);
+      locks.unlock("alice");
+      waiter.join();
+      check("contention recorded", locks.getContentions(stripe) == 1 && locks.getAcquisitions(stripe) == 2
+              && locks.getWaitTime(stripe, TimeUnit.MILLISECONDS) >= 10);
+
+      // un verrou différent n'est pas bloqué par le verrou détenu
+      locks.lock("alice");
+      final String other = customerOn(locks, "alice", false);
+      final CountDownLatch independent = new CountDownLatch(1);
+      Thread parallel = new Thread() {
+        @Override
+        public void run() {
+          locks.lock(other);
+          independent.countDown();
+          locks.unlock(other);
+        }
+      };
+      parallel.start();
+      check("other stripe not blocked", independent.await(1, TimeUnit.SECONDS));
+      locks.unlock("alice");
+      parallel.join();
+
+      // deux clients du même verrou, en concurrence: les sections critiques ne se chevauchent jamais
+      CustomerLocks shared = new CustomerLocks(STRIPES);
+      String bob = "bob";
+      String carol = customerOn(shared, bob, true);
+      AtomicInteger inside = new AtomicInteger();
+      CountDownLatch start = new CountDownLatch(1);
+      Worker w1 = new Worker(shared, bob, inside, start);
+      Worker w2 = new Worker(shared, carol, inside, start);
+      w1.start();
+      w2.start();
+      start.countDown();
+      w1.join();
+      w2.join();
+      int s = shared.stripeOf(bob);
+      check("critical sections never overlap", w1.overlaps == 0 && w2.overlaps == 0);
+      check("every acquisition counted", shared.getAcquisitions(s) == 2 * MAX_ITERATIONS);
+      check("contentions under load", shared.getContentions(s) > 0);
+      System.out.println(shared);
+
+    } catch (Exception e) {
+
+      System.err.println("test aborted: " + e);
+      e.printStackTrace();
+
+    }
+
+    // print test results
+    if (testTotal == 0) {
+      System.out.println("no test performed");
+    } else {
+      String r = "test results: ";
+      r += "total=" + testTotal;
+      r += ", ok=" + testOK + " (" + ((testOK * 100) / testTotal) + "%)";
+      System.out.println(r);
+    }
+
+  }
+}
@@ -0,0 +1,274 @@
+package application;
+
+import java.lang.reflect.Field;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import model.DataAccess;
+import model.Schema;
+
+/**
+ * A test program checking that none of the statements issued by
+ * {@link DataAccess} and its triggers scans a whole table, apart from the
+ * small <code>PRICES</code> table. The program creates the schema (see
+ * {@link Schema}) for a venue of the specified size, books a part of it, then
+ * asks the database to explain each statement and checks its plan.
+ * <p>
+ * Plans are understood for MySQL (no access of type <code>ALL</code>) and for
+ * H2 (no <code>tableScan</code>), so that the test can run against an
+ * embedded H2 database, e.g.
+ * <code>jdbc:h2:mem:booking;MODE=MySQL sa ""</code> with
+ * <code>lib/h2-1.4.200.jar</code> on the class path. <b>Beware</b>: the
+ * database is emptied.
+ */
+public class QueryPlanTest {
+
+  //
+  // CONSTANTS
+  //
+  private static final int DEFAULT_SEATS = 10000;
+  private static final int SEATS_PER_CUSTOMER = 4;
+
+  // les requêtes de DataAccess et de ses triggers, avec des valeurs de paramètres
+  private static final Object[][] QUERIES = {
+    // réservation (insertEntry) et annulation de chaque siège (removeEntry)
+    {DataAccess.SQL_BOOK_SEAT, 1, "customer#1", 5},
+    {DataAccess.SQL_RELEASE_SEAT, 1, 1, "customer#0"},
+    {DataAccess.SQL_DEBIT_ORDER, 25, "customer#1"},
+    // annulation (cancel), partielle ou totale, par classe
+    {DataAccess.SQL_SELECT_AMOUNT, "customer#1"},
+    {DataAccess.SQL_SELECT_CUSTOMER_CLASSES, "customer#1"},
+    {DataAccess.SQL_CANCEL_CLASS, 1, "customer#1"},
+    {DataAccess.SQL_CANCEL_SEATS, 2, "customer#1", 1},
+    {DataAccess.SQL_SELECT_CUSTOMER_SEATS, "customer#1"},
+    // sièges libres, état d'une partition (getSeats), réservations d'un client ou la dernière
+    {DataAccess.SQL_SELECT_FREE_SEATS},
+    {DataAccess.SQL_SELECT_SEAT_RANGE, 100, 200},
+    {DataAccess.SQL_SELECT_CUSTOMER_ORDER, "customer#1"},
+    {DataAccess.SQL_SELECT_LATEST_ORDER},
+    // prix, lus à la connexion
+    {DataAccess.SQL_SELECT_PRICES},
+    // trigger before_booking_update, pour chaque siège modifié
+    {trigger(DataAccess.TRIGGER_COUNT_ORDERS), "customer#1"},
+    {trigger(DataAccess.TRIGGER_INSERT_ORDER), "customer#new"},
+    // trigger after_booking_update, pour chaque siège réservé
+    {trigger(DataAccess.TRIGGER_UPDATE_AMOUNT), "customer#1", "customer#1", "customer#1"}
+  };
+
+  // les tables qu'une requête peut parcourir entièrement: PRICES n'a qu'une ligne par classe
+  private static final String[] SMALL_TABLES = {"PRICES"};
+
+  //
+  // CLASS FIELDS
+  //
+  private static int testTotal = 0;
+  private static int testOK = 0;
+
+  //
+  // HELPER METHODS
+  //
+  /**
+   * Checks whether the specified test was successful and updates the fields
+   * <code>testTotal</code> and <code>testOK</code> accordingly.
+   *
+   * @param test
+   *          the name of the test
+   * @param ok
+   *          <code>true</code> if the test was sucessful and <code>false</code>
+   *          otherwise
+   */
+  private static void check(String test, boolean ok) {
+    testTotal += 1;
+    System.out.print(test + ": ");
+    if (ok) {
+      testOK += 1;
+      System.out.println("ok");
+    } else {
+      System.out.println("FAILED");
+    }
+  }
+
+  /**
+   * Books a part of the venue, so that the tables hold realistic data: every
+   * other group of seats is booked by a different customer.
+   *
+   * @param conn the connection to the database
+   * @param seats the number of seats of the venue
+   * @throws SQLException if the data cannot be inserted
+   */
+  private static void book(Connection conn, int seats) throws SQLException {
+    try (PreparedStatement booking = conn.prepareStatement("UPDATE BOOKINGS SET CLASS=?, CUSTOMER=? WHERE SEAT=?");
+            PreparedStatement order = conn.prepareStatement("INSERT INTO ORDERS (CUSTOMER, AMOUNT, ODATE) VALUES (?, ?, ?)")) {
+      long now = System.currentTimeMillis();
+      for (int first = 1, customer = 0; first + SEATS_PER_CUSTOMER <= seats; first += 2 * SEATS_PER_CUSTOMER, customer++) {
+        for (int seat = first; seat < first + SEATS_PER_CUSTOMER; seat++) {
+          booking.setInt(1, seat % 2 == 0 ? DataAccess.CHILD : DataAccess.ADULT);
+          booking.setString(2, "customer#" + customer);
+          booking.setInt(3, seat);
+          booking.addBatch();
+        }
+        order.setString(1, "customer#" + customer);
+        order.setInt(2, SEATS_PER_CUSTOMER * DataAccess.ADULT_PRICE);
+        order.setTimestamp(3, new java.sql.Timestamp(now - customer * 1000L));
+        order.addBatch();
+      }
+      booking.executeBatch();
+      order.executeBatch();
+    }
+  }
+
+  // Une requête de trigger, la ligne NEW devenant un paramètre
+  private static String trigger(String statement) {
+    return statement.replace("NEW.CUSTOMER", "?");
+  }
+
+  // Vrai si chaque requête déclarée par DataAccess figure dans QUERIES
+  private static boolean allQueriesChecked() throws IllegalAccessException {
+    for (Field field : DataAccess.class.getFields()) {
+      if (field.getName().startsWith("SQL_") || field.getName().startsWith("TRIGGER_")) {
+        String statement = field.getName().startsWith("SQL_") ? (String) field.get(null) : trigger((String) field.get(null));
+        boolean found = false;
+        for (Object[] query : QUERIES) {
+          found |= query[0].equals(statement);
+        }
+        if (!found) {
+          System.out.println("not checked: " + field.getName());
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  // Vrai si la table fait partie de SMALL_TABLES (nom éventuellement préfixé par le schéma)
+  private static boolean isSmall(String table) {
+    String name = table.toUpperCase().replace('.', ' ').trim();
+    for (String small : SMALL_TABLES) {
+      if (name.equals(small) || name.endsWith(" " + small)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Explains the specified query and tells whether its plan scans a whole
+   * table.
+   *
+   * @param conn the connection to the database
+   * @param mysql <code>true</code> for a MySQL database, <code>false</code>
+   * for a H2 database
+   * @param query the query and its parameters
+   * @return the tables scanned, other than the small tables, or an empty
+   * string if none is
+   * @throws SQLException if the query cannot be explained
+   */
+  private static String fullScans(Connection conn, boolean mysql, Object[] query) throws SQLException {
+    StringBuilder scans = new StringBuilder();
+    try (PreparedStatement ps = conn.prepareStatement("EXPLAIN " + query[0])) {
+      for (int i = 1; i < query.length; i++) {
+        ps.setObject(i, query[i]);
+      }
+      try (ResultSet rs = ps.executeQuery()) {
+        ResultSetMetaData md = rs.getMetaData();
+        while (rs.next()) {
+          if (mysql) {
+            // une ligne par table accédée; type ALL = parcours complet de la table
+            String type = null;
+            String table = null;
+            for (int c = 1; c <= md.getColumnCount(); c++) {
+              if ("type".equalsIgnoreCase(md.getColumnLabel(c))) {
+                type = rs.getString(c);
+              } else if ("table".equalsIgnoreCase(md.getColumnLabel(c))) {
+                table = rs.getString(c);
+              }
+            }
+            if ("ALL".equals(type) && !isSmall(table)) {
+              scans.append(table).append(' ');
+            }
+          } else {
+            // le plan H2 signale les parcours complets par un commentaire /* T.tableScan */
+            String plan = rs.getString(1);
+            for (int i = plan.indexOf("tableScan"); i != -1; i = plan.indexOf("tableScan", i + 1)) {
+              String table = plan.substring(plan.lastIndexOf("/*", i) + 2, i).trim();
+              if (!isSmall(table)) {
+                scans.append(table).append(' ');
+              }
+            }
+          }
+        }
+      }
+    }
+    return scans.toString().trim();
+  }
+
+  //
+  // MAIN
+  //
+  /**
+   * Runs the query plan test program.
+   *
+   * @param args
+   *          url login password [seats]
+   */
+  public static void main(String[] args) {
+
+    // check parameters
+    if (args.length != 3 && args.length != 4) {
+      System.err.println("usage: QueryPlanTest <url> <login> <password> [seats]");
+      System.exit(1);
+    }
+    int seats = args.length == 4 ? Integer.parseInt(args[3]) : DEFAULT_SEATS;
+
+    try (Connection conn = DriverManager.getConnection(args[0], args[1], args[2])) {
+
+      String product = conn.getMetaData().getDatabaseProductName();
+      boolean mysql = product.toLowerCase().contains("mysql");
+      if (!mysql && !product.toLowerCase().contains("h2")) {
+        System.err.println("unsupported database: " + product);
+        System.exit(1);
+      }
+
+      // create and populate the database
+      System.out.println("Creating a " + seats + "-seat venue on " + product + "...");
+      Schema.create(conn);
+      Schema.populate(conn, seats, DataAccess.CHILD_PRICE, DataAccess.ADULT_PRICE);
+      book(conn, seats);
+      if (mysql) {
+        try (Statement st = conn.createStatement()) {
+          st.execute("ANALYZE TABLE BOOKINGS, ORDERS, PRICES");
+        }
+      }
+
+      // check the plans
+      System.out.println("Checking query plans...");
+      check("every statement of DataAccess checked", allQueriesChecked());
+      for (Object[] query : QUERIES) {
+        String scans = fullScans(conn, mysql, query);
+        check(query[0] + (scans.isEmpty() ? "" : " [full scan of " + scans + "]"), scans.isEmpty());
+      }
+
+    } catch (Exception e) {
+
+      System.err.println("test aborted: " + e);
+      e.printStackTrace();
+
+    }
+
+    // print test results
+    if (testTotal == 0) {
+      System.out.println("no test performed");
+    } else {
+      String r = "test results: ";
+      r += "total=" + testTotal;
+      r += ", ok=" + testOK + " (" + ((testOK * 100) / testTotal) + "%)";
+      System.out.println(r);
+    }
+
+  }
+}
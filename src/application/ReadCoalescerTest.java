@@ -0,0 +1,280 @@
+package application;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import model.BookingInfo;
+import model.DataAccess;
+import model.DataAccessException;
+import model.ReadCoalescer;
+
+/**
+ * A test program for {@link ReadCoalescer}: coalescing of concurrent reads,
+ * expiry of cached results and invalidation. The reads are counting queries
+ * run in memory, so that no database is needed.
+ * <p>
+ * Given the url, login and password of a database, the program also checks
+ * the reads of {@link DataAccess}: a booking invalidates the cached free
+ * seats and booking info, and strict reads bypass the cache. The database may
+ * be an embedded H2 database, e.g. <code>jdbc:h2:mem:booking;MODE=MySQL sa
+ * ""</code> with <code>lib/h2-1.4.200.jar</code> on the class path.
+ * <b>Beware</b>: the database is emptied.
+ */
+public class ReadCoalescerTest {
+
+  //
+  // CONSTANTS
+  //
+  private static final int MAX_READERS = 8;
+  private static final long TTL = 200;   // ms
+  private static final int MAX_SEATS = 20;
+  private static final long DB_TTL = 60000;  // ms, bien plus long que le test
+
+  //
+  // CLASS FIELDS
+  //
+  private static int testTotal = 0;
+  private static int testOK = 0;
+
+  //
+  // HELPER CLASSES
+  //
+  /**
+   * A query counting its executions, optionally blocked until released, and
+   * optionally failing.
+   */
+  static class CountingQuery implements ReadCoalescer.Query<Integer> {
+
+    private final AtomicInteger executions = new AtomicInteger();
+    private final CountDownLatch release;
+    private final boolean failing;
+
+    CountingQuery(CountDownLatch release, boolean failing) {
+      this.release = release;
+      this.failing = failing;
+    }
+
+    @Override
+    public Integer execute() throws DataAccessException, SQLException {
+      int n = executions.incrementAndGet();
+      if (release != null) {
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          throw new DataAccessException(e);
+        }
+      }
+      if (failing) {
+        throw new SQLException("query failed");
+      }
+      return n;
+    }
+
+    int getExecutions() {
+      return executions.get();
+    }
+  }
+
+  /**
+   * Emulates a reader: reads the specified key once, and records the value
+   * or the error.
+   */
+  static class Reader extends Thread {
+
+    private final ReadCoalescer reads;
+    private final CountingQuery query;
+    private Integer value = null;
+    private Exception error = null;
+
+    Reader(ReadCoalescer reads, CountingQuery query) {
+      this.reads = reads;
+      this.query = query;
+    }
+
+    @Override
+    public void run() {
+      try {
+        value = reads.get("key", query);
+      } catch (DataAccessException | SQLException e) {
+        error = e;
+      }
+    }
+  }
+
+  //
+  // HELPER METHODS
+  //
+  /**
+   * Checks whether the specified test was successful and updates the fields
+   * <code>testTotal</code> and <code>testOK</code> accordingly.
+   *
+   * @param test
+   *          the name of the test
+   * @param ok
+   *          <code>true</code> if the test was sucessful and <code>false</code>
+   *          otherwise
+   */
+  private static void check(String test, boolean ok) {
+    testTotal += 1;
+    System.out.print(test + ": ");
+    if (ok) {
+      testOK += 1;
+      System.out.println("ok");
+    } else {
+      System.out.println("FAILED");
+    }
+  }
+
+  /**
+   * Starts the specified number of readers of the same query, releases the
+   * query once they had time to join it, and waits for them.
+   *
+   * @param reads the coalescer
+   * @param query the query, blocked until <code>release</code> is counted down
+   * @param release the latch releasing the query
+   * @return the readers
+   */
+  private static Reader[] readConcurrently(ReadCoalescer reads, CountingQuery query, CountDownLatch release)
+          throws InterruptedException {
+    Reader[] readers = new Reader[MAX_READERS];
+    for (int i = 0; i < MAX_READERS; i++) {
+      readers[i] = new Reader(reads, query);
+      readers[i].start();
+    }
+    Thread.sleep(100);
+    release.countDown();
+    for (Reader reader : readers) {
+      reader.join();
+    }
+    return readers;
+  }
+
+  /**
+   * Checks the reads of a {@link DataAccess} connected to the specified
+   * database, with a cache outliving the test: the seats are changed behind
+   * its back to tell cached reads from database reads.
+   *
+   * @param url the url of the database
+   * @param login the login to use
+   * @param password the password
+   */
+  private static void checkDataAccess(String url, String login, String password) throws Exception {
+    DataAccess store = new DataAccess(url, login, password);
+    try (Connection conn = DriverManager.getConnection(url, login, password);
+            Statement statement = conn.createStatement()) {
+      store.createDatabase(MAX_SEATS);
+      store.setReadCacheTtl(DB_TTL);
+
+      // un siège réservé sans passer par DataAccess n'est vu que par une lecture stricte
+      check("free seats read", store.getAvailableSeats().size() == MAX_SEATS);
+      statement.executeUpdate("UPDATE BOOKINGS SET CLASS=" + DataAccess.ADULT + ", CUSTOMER='outsider' WHERE SEAT="
+              + MAX_SEATS);
+      check("free seats cached", store.getAvailableSeats().size() == MAX_SEATS);
+      check("strict read skips the cache", store.getAvailableSeats(true).size() == MAX_SEATS - 1);
+
+      // une réservation par DataAccess invalide les sièges libres et les informations en cache
+      statement.executeUpdate("INSERT INTO ORDERS VALUES ('alice', 0, NOW())");
+      check("booking info cached", store.getBookingInfo("alice").getSeatCount() == 0);
+      check("booking", store.book("alice", 0, 2, false) != null);
+      check("booking invalidates the free seats", store.getAvailableSeats().size() == MAX_SEATS - 3);
+      BookingInfo info = store.getBookingInfo("alice");
+      check("booking invalidates the booking info", info != null && info.getSeatCount() == 2);
+    } finally {
+      store.setReadCacheTtl(0);
+      store.close();
+    }
+  }
+
+  //
+  // MAIN
+  //
+  /**
+   * Runs the read coalescer test program.
+   *
+   * @param args
+   *          [url login password]
+   */
+  public static void main(String[] args) {
+
+    try {
+
+      // lectures concurrentes: une seule exécution, partagée
+      ReadCoalescer reads = new ReadCoalescer();
+      CountDownLatch release = new CountDownLatch(1);
+      CountingQuery query = new CountingQuery(release, false);
+      boolean shared = true;
+      for (Reader reader : readConcurrently(reads, query, release)) {
+        shared &= reader.error == null && reader.value != null && reader.value == 1;
+      }
+      check("concurrent reads coalesced", query.getExecutions() == 1 && shared);
+
+      // sans TTL, une lecture qui ne chevauche aucune autre exécute sa requête
+      query = new CountingQuery(null, false);
+      reads.get("key", query);
+      reads.get("key", query);
+      check("sequential reads not cached", query.getExecutions() == 2);
+
+      // clés différentes: lectures indépendantes
+      query = new CountingQuery(null, false);
+      reads.get("key1", query);
+      reads.get("key2", query);
+      check("distinct keys not coalesced", query.getExecutions() == 2);
+
+      // avec TTL, un résultat frais est réutilisé, puis expire
+      reads.setTtlMillis(TTL);
+      query = new CountingQuery(null, false);
+      int first = reads.get("key", query);
+      int second = reads.get("key", query);
+      check("fresh result reused", query.getExecutions() == 1 && first == second);
+      Thread.sleep(TTL + 100);
+      reads.get("key", query);
+      check("stale result expired", query.getExecutions() == 2);
+
+      // l'invalidation oublie les résultats en cache
+      reads.invalidate();
+      query = new CountingQuery(null, false);
+      reads.get("key", query);
+      reads.invalidate();
+      reads.get("key", query);
+      check("invalidation forgets results", query.getExecutions() == 2);
+
+      // une erreur est partagée par les lecteurs qui ont rejoint la requête, mais pas gardée
+      reads.invalidate();
+      release = new CountDownLatch(1);
+      query = new CountingQuery(release, true);
+      boolean failed = true;
+      for (Reader reader : readConcurrently(reads, query, release)) {
+        failed &= reader.error instanceof SQLException;
+      }
+      check("error shared", query.getExecutions() == 1 && failed);
+      query = new CountingQuery(null, false);
+      check("error not cached", reads.get("key", query) == 1 && query.getExecutions() == 1);
+
+      // lectures de DataAccess, si une base est donnée
+      if (args.length == 3) {
+        checkDataAccess(args[0], args[1], args[2]);
+      }
+
+    } catch (Exception e) {
+
+      System.err.println("test aborted: " + e);
+      e.printStackTrace();
+
+    }
+
+    // print test results
+    if (testTotal == 0) {
+      System.out.println("no test performed");
+    } else {
+      String r = "test results: ";
+      r += "total=" + testTotal;
+      r += ", ok=" + testOK + " (" + ((testOK * 100) / testTotal) + "%)";
+      System.out.println(r);
+    }
+
+  }
+}
@@ -0,0 +1,171 @@
+package application;
+
+import java.util.Arrays;
+
+import model.SeatAllocationStrategy;
+import model.SeatMap;
+
+/**
+ * A test program for {@link SeatAllocationStrategy}: the seats picked by each
+ * strategy on small venues, for grouped and ungrouped bookings, with breaks
+ * between rows, and the requests that cannot be satisfied. No database is
+ * needed.
+ */
+public class SeatAllocationStrategyTest {
+
+  //
+  // CLASS FIELDS
+  //
+  private static int testTotal = 0;
+  private static int testOK = 0;
+
+  //
+  // HELPER METHODS
+  //
+  /**
+   * Checks whether the specified test was successful and updates the fields
+   * <code>testTotal</code> and <code>testOK</code> accordingly.
+   *
+   * @param test
+   *          the name of the test
+   * @param ok
+   *          <code>true</code> if the test was sucessful and <code>false</code>
+   *          otherwise
+   */
+  private static void check(String test, boolean ok) {
+    testTotal += 1;
+    System.out.print(test + ": ");
+    if (ok) {
+      testOK += 1;
+      System.out.println("ok");
+    } else {
+      System.out.println("FAILED");
+    }
+  }
+
+  // Retourne une salle des sièges 1 à seats, tous libres sauf ceux spécifiés
+  private static SeatMap venue(int seats, int... taken) {
+    SeatMap map = new SeatMap(1, seats);
+    for (int seat = 1; seat <= seats; seat++) {
+      map.release(seat);
+    }
+    for (int seat : taken) {
+      map.take(seat);
+    }
+    return map;
+  }
+
+  /**
+   * Allocates seats in the specified map with the specified strategy, and
+   * tells whether exactly the expected seats were picked and taken.
+   *
+   * @param strategy the strategy
+   * @param map the free seats; left unchanged
+   * @param count the number of seats to allocate
+   * @param grouped <code>true</code> for a grouped booking
+   * @param expected the seats expected, in allocation order
+   * @return <code>true</code> if the expected seats were allocated
+   */
+  private static boolean picks(SeatAllocationStrategy strategy, SeatMap map, int count, boolean grouped,
+          int... expected) {
+    SeatMap seats = map.copy();
+    int[] allocated = strategy.allocate(seats, count, grouped);
+    if (!Arrays.equals(allocated, expected) || seats.getFreeCount() != map.getFreeCount() - count) {
+      System.out.println(strategy + " picked " + Arrays.toString(allocated));
+      return false;
+    }
+    for (int seat : expected) {
+      if (seats.isFree(seat)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  //
+  // MAIN
+  //
+  /**
+   * Runs the seat allocation strategy test program.
+   *
+   * @param args
+   *          unused
+   */
+  public static void main(String[] args) {
+
+    try {
+
+      SeatAllocationStrategy firstFit = SeatAllocationStrategy.FIRST_FIT;
+      SeatAllocationStrategy bestFit = SeatAllocationStrategy.BEST_FIT;
+      SeatAllocationStrategy worstFit = SeatAllocationStrategy.WORST_FIT;
+      SeatAllocationStrategy minFragmentation = SeatAllocationStrategy.MIN_FRAGMENTATION;
+
+      // séries de 7, 3 et 5 sièges libres
+      SeatMap runs = venue(17, 8, 12);
+
+      // réservations groupées sans série exacte
+      check("first fit, grouped", picks(firstFit, runs, 2, true, 1, 2));
+      check("best fit, grouped", picks(bestFit, runs, 2, true, 9, 10));
+      check("worst fit, grouped", picks(worstFit, runs, 2, true, 1, 2));
+      check("min fragmentation, grouped", picks(minFragmentation, runs, 2, true, 13, 14));
+
+      // une série exacte est préférée par best fit et min fragmentation, pas par les autres
+      check("first fit, exact run ignored", picks(firstFit, runs, 3, true, 1, 2, 3));
+      check("best fit, exact run", picks(bestFit, runs, 3, true, 9, 10, 11));
+      check("worst fit, exact run ignored", picks(worstFit, runs, 3, true, 1, 2, 3));
+      check("min fragmentation, exact run", picks(minFragmentation, runs, 3, true, 9, 10, 11));
+      // min fragmentation: aucune série ne peut garder un second groupe de 4, repli sur la plus petite
+      check("min fragmentation, fallback", picks(minFragmentation, runs, 4, true, 13, 14, 15, 16));
+
+      // réservations non groupées: ordre de consommation des séries
+      check("first fit, ungrouped", picks(firstFit, runs, 9, false, 1, 2, 3, 4, 5, 6, 7, 9, 10));
+      check("best fit, ungrouped", picks(bestFit, runs, 4, false, 9, 10, 11, 13));
+      check("worst fit, ungrouped", picks(worstFit, runs, 9, false, 1, 2, 3, 4, 5, 6, 7, 13, 14));
+      check("min fragmentation, ungrouped in one run", picks(minFragmentation, runs, 4, false, 13, 14, 15, 16));
+      check("min fragmentation, ungrouped fills the holes",
+              picks(minFragmentation, runs, 9, false, 9, 10, 11, 13, 14, 15, 16, 17, 1));
+
+      // aucune série groupée ne traverse une coupure
+      SeatMap rows = venue(10);
+      rows.setBreak(4);
+      check("first fit, no group across a break", picks(firstFit, rows, 5, true, 5, 6, 7, 8, 9));
+      check("best fit, row filled", picks(bestFit, rows, 4, true, 1, 2, 3, 4));
+      check("worst fit, largest row", picks(worstFit, rows, 4, true, 5, 6, 7, 8));
+      check("min fragmentation, row filled", picks(minFragmentation, rows, 4, true, 1, 2, 3, 4));
+      check("ungrouped across a break", picks(firstFit, rows, 6, false, 1, 2, 3, 4, 5, 6));
+      boolean none = true;
+      for (SeatAllocationStrategy strategy : SeatAllocationStrategy.values()) {
+        none &= strategy.allocate(rows.copy(), 7, true) == null;
+      }
+      check("group larger than any row", none);
+
+      // demandes vides ou trop grandes: la salle n'est pas modifiée
+      boolean unchanged = true;
+      for (SeatAllocationStrategy strategy : SeatAllocationStrategy.values()) {
+        SeatMap seats = runs.copy();
+        unchanged &= strategy.allocate(seats, 16, false) == null
+                && strategy.allocate(seats, 8, true) == null
+                && strategy.allocate(seats, 0, true).length == 0
+                && seats.getFreeCount() == runs.getFreeCount();
+      }
+      check("requests not satisfied", unchanged);
+
+    } catch (Exception e) {
+
+      System.err.println("test aborted: " + e);
+      e.printStackTrace();
+
+    }
+
+    // print test results
+    if (testTotal == 0) {
+      System.out.println("no test performed");
+    } else {
+      String r = "test results: ";
+      r += "total=" + testTotal;
+      r += ", ok=" + testOK + " (" + ((testOK * 100) / testTotal) + "%)";
+      System.out.println(r);
+    }
+
+  }
+}
@@ -0,0 +1,383 @@
+package application;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import model.BookingInfo;
+import model.DataAccess;
+import model.DataAccessException;
+import server.BookingClient;
+import server.BookingServer;
+import server.BookingService;
+import server.DataAccessBookingService;
+import server.MemoryBookingService;
+
+/**
+ * A test program for {@link BookingServer} and {@link BookingClient}. The
+ * program starts a server on localhost, backed by a
+ * {@link MemoryBookingService}, and checks the booking operations, request
+ * pipelining and error reporting through the network. It then measures the
+ * throughput of the server: several clients, each on its own connection,
+ * pipeline windows of requests (book, read back, cancel), and the number of
+ * operations per second is reported, with the requests handled by the I/O
+ * thread and by a pool of workers.
+ * <p>
+ * Given the url, login and password of a database, the server is backed by
+ * a {@link DataAccessBookingService} instead, so that the same checks run
+ * against the database and the throughput includes its cost. The database
+ * must be MySQL, whose triggers maintain the amounts of the orders.
+ * <b>Beware</b>: the database is emptied.
+ */
+public class ServerTest {
+
+  //
+  // CONSTANTS
+  //
+  private static final int MAX_SEATS = 100000;
+  private static final int PIPELINED = 1000;
+  private static final int DEFAULT_CLIENTS = 4;
+  private static final int DEFAULT_OPERATIONS = 1000000;
+  private static final int DEFAULT_DB_OPERATIONS = 10000;
+  private static final int DEFAULT_WINDOW = 96;
+  private static final int WORKERS = 4;
+  private static final String FAILING_CUSTOMER = "failing";
+
+  //
+  // CLASS FIELDS
+  //
+  private static int testTotal = 0;
+  private static int testOK = 0;
+
+  //
+  // HELPER CLASSES
+  //
+  /**
+   * A service failing for a given customer, to check error reporting.
+   */
+  static class FailingService implements BookingService {
+
+    private final BookingService service;
+
+    FailingService(BookingService service) {
+      this.service = service;
+    }
+
+    @Override
+    public BookingInfo book(String customer, int childCount, int adultCount, boolean groupedSeats) throws DataAccessException {
+      if (FAILING_CUSTOMER.equals(customer)) {
+        throw new DataAccessException("unable to book for " + customer);
+      }
+      return service.book(customer, childCount, adultCount, groupedSeats);
+    }
+
+    @Override
+    public BookingInfo cancel(String customer, int childCount, int adultCount) throws DataAccessException {
+      return service.cancel(customer, childCount, adultCount);
+    }
+
+    @Override
+    public int[] getAvailableSeats() throws DataAccessException {
+      return service.getAvailableSeats();
+    }
+
+    @Override
+    public BookingInfo getBookingInfo(String customer) throws DataAccessException {
+      return service.getBookingInfo(customer);
+    }
+  }
+
+  /**
+   * Emulates a client application issuing pipelined requests on its own
+   * connection, in windows of the specified size.
+   */
+  static class LoadEmulator extends Thread {
+
+    private final BookingClient client;
+    private final String name;
+    private final int operations;
+    private final int window;
+    private int failures = 0;
+
+    LoadEmulator(BookingClient client, String name, int operations, int window) {
+      this.client = client;
+      this.name = name;
+      this.operations = operations;
+      this.window = window;
+    }
+
+    @Override
+    public void run() {
+      try {
+        for (int done = 0; done < operations; ) {
+          CompletableFuture<BookingInfo> last = null;
+          int count = Math.min(window, operations - done) / 3 * 3;
+          if (count == 0) {
+            break;
+          }
+          for (int i = 0; i < count; i += 3) {
+            String customer = name + "#" + i;
+            client.bookAsync(customer, 1, 1, true);
+            client.getBookingInfoAsync(customer);
+            last = client.cancelAsync(customer, -1, -1);
+          }
+          client.flush();
+          // les réponses arrivent dans l'ordre: la dernière arrivée, toutes le sont
+          BookingInfo remaining = BookingClient.get(last);
+          if (remaining == null || remaining.getSeatCount() != 0) {
+            failures++;
+          }
+          done += count;
+        }
+      } catch (DataAccessException | IOException e) {
+        System.err.println(name + ": " + e);
+        failures++;
+      }
+    }
+
+    int getFailures() {
+      return failures;
+    }
+  }
+
+  //
+  // HELPER METHODS
+  //
+  /**
+   * Checks whether the specified test was successful and updates the fields
+   * <code>testTotal</code> and <code>testOK</code> accordingly.
+   *
+   * @param test
+   *          the name of the test
+   * @param ok
+   *          <code>true</code> if the test was sucessful and <code>false</code>
+   *          otherwise
+   */
+  private static void check(String test, boolean ok) {
+    testTotal += 1;
+    System.out.print(test + ": ");
+    if (ok) {
+      testOK += 1;
+      System.out.println("ok");
+    } else {
+      System.out.println("FAILED");
+    }
+  }
+
+  private static boolean sameSeats(BookingInfo b1, BookingInfo b2) {
+    return b1 != null && b2 != null && b1.getSeats().equals(b2.getSeats());
+  }
+
+  /**
+   * Checks the operations through the network.
+   *
+   * @param client the client to use
+   */
+  private static void checkOperations(BookingClient client) throws DataAccessException, IOException {
+    BookingInfo booking = client.book("alice", 1, 1, true);
+    check("grouped booking", booking != null && booking.getSeatCount() == 2
+            && booking.getSeat(1) == booking.getSeat(0) + 1 && booking.getAmountCents() == 7500);
+    check("booking info", sameSeats(booking, client.getBookingInfo("alice")));
+    check("latest booking info", sameSeats(booking, client.getBookingInfo(null)));
+    BookingInfo nobody = client.getBookingInfo("nobody");
+    check("unknown customer", nobody != null && nobody.getCustomer() == null && nobody.getSeatCount() == 0);
+    check("booking too large", client.book("bob", 0, MAX_SEATS, false) == null);
+    check("available seats", client.getAvailableSeats().length == MAX_SEATS - 2);
+    BookingInfo remaining = client.cancel("alice", -1, -1);
+    check("cancellation", remaining != null && remaining.getSeatCount() == 0 && remaining.getAmountCents() == 0);
+    check("bad cancellation", client.cancel("alice", -2, 0) == null);
+    int[] seats = client.getAvailableSeats();
+    check("seats freed", seats.length == MAX_SEATS && seats[0] == 1 && seats[MAX_SEATS - 1] == MAX_SEATS);
+    BookingInfo unicode = client.book("Zoë-日本", 0, 1, false);
+    check("unicode customer", unicode != null && "Zoë-日本".equals(unicode.getCustomer()));
+    client.cancel("Zoë-日本", -1, -1);
+
+    // requêtes en pipeline: les réponses arrivent dans l'ordre des requêtes
+    List<CompletableFuture<BookingInfo>> results = new ArrayList<>(PIPELINED);
+    for (int i = 0; i < PIPELINED; i++) {
+      results.add(client.bookAsync("pipelined#" + i, 0, 1, false));
+    }
+    client.flush();
+    boolean ordered = true;
+    Set<Integer> booked = new HashSet<>();
+    for (int i = 0; i < PIPELINED; i++) {
+      BookingInfo b = BookingClient.get(results.get(i));
+      ordered &= b != null && b.getCustomer().equals("pipelined#" + i) && b.getSeatCount() == 1;
+      booked.add(b == null ? -1 : b.getSeat(0));
+    }
+    check("pipelined bookings in order", ordered && booked.size() == PIPELINED);
+    for (int i = 0; i < PIPELINED; i++) {
+      client.cancelAsync("pipelined#" + i, -1, -1);
+    }
+    check("pipelined cancellations", client.getAvailableSeats().length == MAX_SEATS);
+
+    // une erreur du service est renvoyée au client, et la connexion reste utilisable
+    CompletableFuture<BookingInfo> failed = client.bookAsync(FAILING_CUSTOMER, 0, 1, false);
+    CompletableFuture<BookingInfo> next = client.bookAsync("carol", 0, 1, false);
+    client.flush();
+    boolean reported = false;
+    try {
+      BookingClient.get(failed);
+    } catch (DataAccessException e) {
+      reported = e.getMessage().contains(FAILING_CUSTOMER);
+    }
+    check("error reported", reported);
+    check("request after error", BookingClient.get(next) != null);
+    client.cancel("carol", -1, -1);
+  }
+
+  /**
+   * Sends a request whose customer is longer than its frame, and checks that
+   * the server closes the connection instead of answering it.
+   *
+   * @param port the port of the server
+   */
+  private static void checkMalformedFrame(int port) throws IOException {
+    try (Socket socket = new Socket("localhost", port)) {
+      socket.setSoTimeout(5000);
+      DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+      // BOOK, une chaîne annoncée de 0x8000 octets, puis enfants, adultes, groupé
+      out.writeInt(1 + 2 + 4 + 4 + 1);
+      out.writeByte(1);
+      out.writeShort(0x8000);
+      out.writeInt(0);
+      out.writeInt(1);
+      out.writeByte(0);
+      out.flush();
+      boolean closed;
+      try {
+        closed = socket.getInputStream().read() == -1;
+      } catch (SocketException e) {
+        closed = true;
+      }
+      check("malformed frame rejected", closed);
+    }
+  }
+
+  /**
+   * Creates a booking service backed by the specified database, emptied and
+   * populated for the test, with one data access object per worker.
+   *
+   * @param url the url of the database
+   * @param login the login to use
+   * @param password the password
+   * @return the booking service
+   */
+  private static BookingService openDatabase(String url, String login, String password) throws Exception {
+    DataAccess[] stores = new DataAccess[WORKERS];
+    for (int i = 0; i < WORKERS; i++) {
+      stores[i] = new DataAccess(url, login, password);
+    }
+    stores[0].createDatabase(MAX_SEATS);
+    return new DataAccessBookingService(stores);
+  }
+
+  /**
+   * Measures the throughput of the specified server.
+   *
+   * @param port the port of the server
+   * @param clients the number of clients
+   * @param operations the total number of operations
+   * @param window the number of requests pipelined by each client
+   * @return the number of operations per second
+   */
+  private static long measure(int port, int clients, int operations, int window) throws IOException, InterruptedException {
+    BookingClient[] connections = new BookingClient[clients];
+    LoadEmulator[] emulators = new LoadEmulator[clients];
+    for (int i = 0; i < clients; i++) {
+      connections[i] = new BookingClient("localhost", port);
+      emulators[i] = new LoadEmulator(connections[i], "client" + i, operations / clients, window);
+    }
+    long start = System.nanoTime();
+    for (LoadEmulator emulator : emulators) {
+      emulator.start();
+    }
+    int failures = 0;
+    int done = 0;
+    for (LoadEmulator emulator : emulators) {
+      emulator.join();
+      failures += emulator.getFailures();
+      done += emulator.operations / 3 * 3;
+    }
+    long time = System.nanoTime() - start;
+    for (BookingClient connection : connections) {
+      connection.close();
+    }
+    check("load without failure", failures == 0);
+    return done * 1000000000L / time;
+  }
+
+  //
+  // MAIN
+  //
+  /**
+   * Runs the server test program.
+   *
+   * @param args
+   *          [url login password] [clients [operations [window]]]
+   */
+  public static void main(String[] args) {
+    boolean database = args.length >= 3 && args[0].startsWith("jdbc:");
+    int a = database ? 3 : 0;
+    int clients = args.length > a ? Integer.parseInt(args[a]) : DEFAULT_CLIENTS;
+    int operations = args.length > a + 1 ? Integer.parseInt(args[a + 1])
+            : database ? DEFAULT_DB_OPERATIONS : DEFAULT_OPERATIONS;
+    int window = args.length > a + 2 ? Integer.parseInt(args[a + 2]) : DEFAULT_WINDOW;
+
+    try {
+
+      // vérification des opérations, puis débit avec le thread d'entrées-sorties seul
+      BookingService service = database ? openDatabase(args[0], args[1], args[2])
+              : new MemoryBookingService(1, MAX_SEATS);
+      BookingServer server = new BookingServer(new FailingService(service), 0, 0);
+      server.start();
+      System.out.println("Server started on port " + server.getPort() + ", checking operations...");
+      try (BookingClient client = new BookingClient("localhost", server.getPort())) {
+        checkOperations(client);
+      }
+      checkMalformedFrame(server.getPort());
+      // un premier passage pour chauffer la JVM
+      measure(server.getPort(), clients, operations / 10, window);
+      long inline = measure(server.getPort(), clients, operations, window);
+      check("no seat lost", service.getAvailableSeats().length == MAX_SEATS);
+      server.stop();
+
+      // débit avec un pool de workers; la base, déjà revenue à son état initial, est réutilisée
+      if (!database) {
+        service = new MemoryBookingService(1, MAX_SEATS);
+      }
+      server = new BookingServer(service, 0, WORKERS);
+      server.start();
+      measure(server.getPort(), clients, operations / 10, window);
+      long pooled = measure(server.getPort(), clients, operations, window);
+      check("no seat lost with workers", service.getAvailableSeats().length == MAX_SEATS);
+      server.stop();
+
+      System.out.println("throughput (" + (database ? "database" : "in memory") + "): clients=" + clients + ", window=" + window
+              + ", I/O thread=" + inline + " ops/s, " + WORKERS + " workers=" + pooled + " ops/s");
+
+    } catch (Exception e) {
+
+      System.err.println("test aborted: " + e);
+      e.printStackTrace();
+
+    }
+
+    // print test results
+    if (testTotal == 0) {
+      System.out.println("no test performed");
+    } else {
+      String r = "test results: ";
+      r += "total=" + testTotal;
+      r += ", ok=" + testOK + " (" + ((testOK * 100) / testTotal) + "%)";
+      System.out.println(r);
+    }
+
+  }
+}
@@ -154,6 +154,7 @@ public class SimpleTest {
       store = new DataAccess(args[0], args[1], args[2]);
 
       // create and populate the database
+      store.createDatabase(MAX_SEATS);
 
       // execute single-user tests
       System.out.println("Running single-user tests...");
@@ -0,0 +1,228 @@
+package application;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import model.VenueLayout;
+import model.VenueSeats;
+
+/**
+ * A test program for {@link VenueLayout} and {@link VenueSeats}: loading of
+ * a layout, aisle breaks, section preference, and incremental maintenance of
+ * the index. It then compares the cost of a grouped booking with an index
+ * kept up to date and with an index rebuilt for each booking. No database is
+ * needed.
+ */
+public class VenueLayoutTest {
+
+  //
+  // CONSTANTS
+  //
+  private static final String LAYOUT
+          = "# section row firstSeat seatCount [aisle ...]\n"
+          + "ORCH A 1 10 4\n"
+          + "ORCH B 11 10\n"
+          + "\n"
+          + "BALC A 21 6\n";
+  private static final int MAX_OPERATIONS = 20000;
+  private static final int BENCH_BOOKINGS = 2000;
+
+  //
+  // CLASS FIELDS
+  //
+  private static int testTotal = 0;
+  private static int testOK = 0;
+
+  //
+  // HELPER METHODS
+  //
+  /**
+   * Checks whether the specified test was successful and updates the fields
+   * <code>testTotal</code> and <code>testOK</code> accordingly.
+   *
+   * @param test
+   *          the name of the test
+   * @param ok
+   *          <code>true</code> if the test was sucessful and <code>false</code>
+   *          otherwise
+   */
+  private static void check(String test, boolean ok) {
+    testTotal += 1;
+    System.out.print(test + ": ");
+    if (ok) {
+      testOK += 1;
+      System.out.println("ok");
+    } else {
+      System.out.println("FAILED");
+    }
+  }
+
+  private static List<Integer> range(int first, int end) {
+    List<Integer> seats = new ArrayList<>();
+    for (int seat = first; seat < end; seat++) {
+      seats.add(seat);
+    }
+    return seats;
+  }
+
+  private static boolean adjacent(int[] seats, int first, int count) {
+    if (seats == null || seats.length != count) {
+      return false;
+    }
+    for (int i = 0; i < count; i++) {
+      if (seats[i] != first + i) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // Vrai si l'index donne pour chaque rangée la même plus longue série qu'un index reconstruit
+  private static boolean sameRuns(VenueLayout layout, VenueSeats index, List<Integer> freeSeats) {
+    VenueSeats rebuilt = new VenueSeats(layout, freeSeats);
+    for (int row = 0; row < layout.getRowCount(); row++) {
+      if (index.getLongestRun(row) != rebuilt.getLongestRun(row)) {
+        return false;
+      }
+    }
+    return index.getFreeCount() == rebuilt.getFreeCount();
+  }
+
+  //
+  // MAIN
+  //
+  /**
+   * Runs the venue layout test program.
+   *
+   * @param args
+   *          unused
+   */
+  public static void main(String[] args) {
+
+    try {
+
+      // chargement d'une description textuelle
+      VenueLayout layout = VenueLayout.load(new StringReader(LAYOUT));
+      check("layout loaded", layout.getSeatCount() == 26 && layout.getSectionCount() == 2
+              && layout.getRowCount() == 3 && "BALC".equals(layout.getSectionName(1)));
+      check("rows of the layout", layout.getRow(15) == 1 && "A".equals(layout.getRowLabel(2))
+              && layout.getRowSection(2) == 1 && layout.getRow(27) == -1);
+      boolean rejected = false;
+      try {
+        VenueLayout.load(new StringReader("ORCH A 1 10\nORCH B 11\n"));
+      } catch (IllegalArgumentException e) {
+        rejected = e.getMessage().startsWith("line 2");
+      }
+      check("malformed line rejected", rejected);
+
+      // l'allée coupe la rangée A en deux blocs
+      VenueSeats index = new VenueSeats(layout, range(1, 27));
+      check("aisle splits the row", index.getLongestRun(0) == 6 && index.getLongestRun(1) == 10
+              && index.getLongestRun(2) == 6);
+      index = new VenueSeats(layout, range(1, 7));
+      check("no group across an aisle", index.findGrouped(5, null) == -1 && index.findGrouped(4, null) == 1);
+
+      // préférence de section, puis repli sur les autres sections
+      index = new VenueSeats(layout, range(1, 27));
+      check("preferred section", adjacent(index.takeGrouped(3, "BALC"), 21, 3));
+      check("first section by default", adjacent(index.takeGrouped(3, null), 1, 3));
+      check("unknown section ignored", adjacent(index.takeGrouped(2, "NOWHERE"), 5, 2));
+      check("fallback to another section", adjacent(index.takeGrouped(10, "BALC"), 11, 10));
+      index = new VenueSeats(layout, range(5, 27));
+      index.take(8);
+      check("tightest run of the block chosen", adjacent(index.takeGrouped(2, "ORCH"), 9, 2));
+
+      // mise à jour incrémentale
+      index = new VenueSeats(layout, range(1, 27));
+      index.take(7);
+      index.take(2);
+      check("runs after take", index.getLongestRun(0) == 3 && index.getFreeCount() == 24);
+      index.release(7);
+      check("runs after release", index.getLongestRun(0) == 6 && index.isFree(7) && !index.isFree(2));
+      boolean outside = false;
+      try {
+        index.take(27);
+      } catch (IllegalArgumentException e) {
+        outside = true;
+      }
+      check("seat outside the layout", outside);
+
+      // une suite aléatoire de prises et de libérations donne le même index qu'une reconstruction
+      VenueLayout grid = VenueLayout.grid(4, 20, 30, 10);
+      List<Integer> free = range(1, grid.getSeatCount() + 1);
+      index = new VenueSeats(grid, free);
+      Random random = new Random(42);
+      boolean same = true;
+      for (int i = 0; i < MAX_OPERATIONS; i++) {
+        int seat = 1 + random.nextInt(grid.getSeatCount());
+        if (random.nextBoolean()) {
+          index.take(seat);
+          free.remove(Integer.valueOf(seat));
+        } else {
+          index.release(seat);
+          if (!free.contains(seat)) {
+            free.add(seat);
+          }
+        }
+        if (i % 1000 == 0) {
+          same &= sameRuns(grid, index, free);
+        }
+      }
+      check("incremental index matches a rebuild", same && sameRuns(grid, index, free));
+
+      // rechargement, invalidation et index partagé par base
+      index.reload(range(1, 4));
+      check("reload", index.isLoaded() && index.getFreeCount() == 3 && index.getLongestRun(1) == 0);
+      index.invalidate();
+      check("invalidate", !index.isLoaded());
+      VenueSeats shared = VenueSeats.forDatabase("jdbc:test:a", grid);
+      check("shared index", shared == VenueSeats.forDatabase("jdbc:test:a", grid) && !shared.isLoaded()
+              && shared != VenueSeats.forDatabase("jdbc:test:b", grid));
+      // un plan rechargé à l'identique retrouve le même index, un plan différent non
+      VenueLayout reloaded = VenueLayout.grid(4, 20, 30, 10);
+      check("index keyed by layout value", reloaded.equals(grid) && reloaded.hashCode() == grid.hashCode()
+              && VenueSeats.forDatabase("jdbc:test:a", reloaded) == shared
+              && VenueLayout.load(new StringReader(LAYOUT)).equals(layout)
+              && !grid.equals(VenueLayout.grid(4, 20, 30, 15))
+              && VenueSeats.forDatabase("jdbc:test:a", VenueLayout.grid(4, 20, 30, 15)) != shared);
+
+      // coût d'une réservation groupée: index tenu à jour contre index reconstruit
+      VenueLayout venue = VenueLayout.grid(10, 50, 40, 10);
+      index = new VenueSeats(venue, range(1, venue.getSeatCount() + 1));
+      long start = System.nanoTime();
+      for (int i = 0; i < BENCH_BOOKINGS; i++) {
+        int[] seats = index.takeGrouped(4, "S" + (1 + i % 10));
+        for (int seat : seats) {
+          index.release(seat);
+        }
+      }
+      long incremental = System.nanoTime() - start;
+      start = System.nanoTime();
+      for (int i = 0; i < BENCH_BOOKINGS; i++) {
+        new VenueSeats(venue, range(1, venue.getSeatCount() + 1)).takeGrouped(4, "S" + (1 + i % 10));
+      }
+      long rebuilt = System.nanoTime() - start;
+      System.out.println("grouped bookings in " + venue + ": incremental=" + (incremental / BENCH_BOOKINGS)
+              + " ns, rebuilt=" + (rebuilt / BENCH_BOOKINGS) + " ns");
+
+    } catch (Exception e) {
+
+      System.err.println("test aborted: " + e);
+      e.printStackTrace();
+
+    }
+
+    // print test results
+    if (testTotal == 0) {
+      System.out.println("no test performed");
+    } else {
+      String r = "test results: ";
+      r += "total=" + testTotal;
+      r += ", ok=" + testOK + " (" + ((testOK * 100) / testTotal) + "%)";
+      System.out.println(r);
+    }
+
+  }
+}
@@ -0,0 +1,268 @@
+package application;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import model.BookingInfo;
+import model.DataAccess;
+import model.SeatAllocationStrategy;
+import model.SeatMap;
+import model.Waitlist;
+import model.WaitlistListener;
+
+/**
+ * A test program for {@link Waitlist}: matching of the waiting requests
+ * against free seats, priority and arrival order, requests that do not fit,
+ * removal, and concurrent additions. The free seats are kept in a
+ * {@link SeatMap}, so that no database is needed.
+ * <p>
+ * Given the url, login and password of a database, the program also checks
+ * the real path through {@link DataAccess}: a request that cannot be booked
+ * waits, and a cancellation books it and notifies its listener. The database
+ * may be an embedded H2 database, e.g. <code>jdbc:h2:mem:booking;MODE=MySQL
+ * sa ""</code> with <code>lib/h2-1.4.200.jar</code> on the class path.
+ * <b>Beware</b>: the database is emptied.
+ */
+public class WaitlistTest {
+
+  //
+  // CONSTANTS
+  //
+  private static final int MAX_THREADS = 8;
+  private static final int MAX_REQUESTS = 1000;
+  private static final int MAX_SEATS = 4;
+
+  //
+  // CLASS FIELDS
+  //
+  private static int testTotal = 0;
+  private static int testOK = 0;
+
+  //
+  // HELPER METHODS
+  //
+  /**
+   * Checks whether the specified test was successful and updates the fields
+   * <code>testTotal</code> and <code>testOK</code> accordingly.
+   *
+   * @param test
+   *          the name of the test
+   * @param ok
+   *          <code>true</code> if the test was sucessful and <code>false</code>
+   *          otherwise
+   */
+  private static void check(String test, boolean ok) {
+    testTotal += 1;
+    System.out.print(test + ": ");
+    if (ok) {
+      testOK += 1;
+      System.out.println("ok");
+    } else {
+      System.out.println("FAILED");
+    }
+  }
+
+  private static SeatMap free(Integer... seats) {
+    return SeatMap.of(Arrays.asList(seats));
+  }
+
+  private static List<String> customers(List<Waitlist.Match> matches) {
+    List<String> customers = new ArrayList<>();
+    for (Waitlist.Match match : matches) {
+      customers.add(match.getRequest().getCustomer());
+    }
+    return customers;
+  }
+
+  // Vrai si les sièges des deux réservations sont distincts et occupent toute la salle
+  private static boolean fillVenue(BookingInfo b1, BookingInfo b2) {
+    Set<Integer> seats = new HashSet<>();
+    for (BookingInfo b : Arrays.asList(b1, b2)) {
+      for (int i = 0; i < b.getSeatCount(); i++) {
+        seats.add(b.getSeat(i));
+      }
+    }
+    return seats.size() == MAX_SEATS && b1.getSeatCount() + b2.getSeatCount() == MAX_SEATS;
+  }
+
+  /**
+   * Checks the waitlist of a {@link DataAccess} connected to the specified
+   * database: a request waits while the venue is full, and is booked when a
+   * cancellation frees seats.
+   *
+   * @param url the url of the database
+   * @param login the login to use
+   * @param password the password
+   */
+  private static void checkDataAccess(String url, String login, String password) throws Exception {
+    DataAccess store = new DataAccess(url, login, password);
+    try (Connection conn = DriverManager.getConnection(url, login, password);
+            Statement statement = conn.createStatement()) {
+      store.createDatabase(MAX_SEATS);
+      Waitlist waitlist = new Waitlist();
+      store.setWaitlist(waitlist);
+      final List<BookingInfo> notified = Collections.synchronizedList(new ArrayList<BookingInfo>());
+      WaitlistListener listener = new WaitlistListener() {
+        @Override
+        public void booked(Waitlist.Request request, BookingInfo booking) {
+          notified.add(booking);
+        }
+      };
+      // les commandes que les triggers de MySQL créeraient, pour une base qui n'en a pas
+      statement.executeUpdate("INSERT INTO ORDERS VALUES ('alice', " + MAX_SEATS * DataAccess.ADULT_PRICE + ", NOW())");
+      statement.executeUpdate("INSERT INTO ORDERS VALUES ('bob', 0, NOW())");
+
+      check("venue booked", store.book("alice", 0, MAX_SEATS, false) != null);
+      check("request waits", store.book("bob", 0, 2, false, 0, listener) == null && waitlist.size() == 1
+              && notified.isEmpty());
+      BookingInfo remaining = store.cancel("alice", 0, 2);
+      check("cancellation books the request", remaining != null && waitlist.size() == 0 && notified.size() == 1
+              && notified.get(0).getSeatCount() == 2 && "bob".equals(notified.get(0).getCustomer()));
+      check("freed seats go to the request", remaining != null && notified.size() == 1
+              && fillVenue(remaining, notified.get(0)) && store.getAvailableSeats(true) == null);
+    } finally {
+      store.close();
+    }
+  }
+
+  //
+  // MAIN
+  //
+  /**
+   * Runs the waitlist test program.
+   *
+   * @param args
+   *          [url login password]
+   */
+  public static void main(String[] args) {
+
+    try {
+
+      SeatAllocationStrategy strategy = SeatAllocationStrategy.FIRST_FIT;
+
+      // par priorité décroissante, puis par ordre d'arrivée
+      Waitlist waitlist = new Waitlist();
+      waitlist.add("low", 0, 2, false, 0, null);
+      waitlist.add("high", 1, 1, false, 5, null);
+      waitlist.add("mid", 0, 2, false, 1, null);
+      waitlist.add("high-later", 0, 2, false, 5, null);
+      SeatMap seats = free(1, 2, 3, 4, 5, 6, 7, 8);
+      List<Waitlist.Match> matches = waitlist.preview(seats, strategy);
+      check("priority order", customers(matches).equals(Arrays.asList("high", "high-later", "mid", "low")));
+      Set<Integer> matched = new HashSet<>();
+      for (Waitlist.Match match : matches) {
+        for (int seat : match.getSeats()) {
+          matched.add(seat);
+        }
+      }
+      check("distinct seats", matched.size() == 8 && seats.getFreeCount() == 0);
+      check("preview leaves the requests waiting", waitlist.size() == 4);
+
+      // une demande trop grande ne bloque pas celles qui la suivent
+      waitlist = new Waitlist();
+      waitlist.add("large", 0, 5, false, 10, null);
+      waitlist.add("small", 0, 2, false, 0, null);
+      seats = free(1, 2, 3, 4);
+      matches = waitlist.preview(seats, strategy);
+      check("large request does not block", customers(matches).equals(Arrays.asList("small"))
+              && seats.getFreeCount() == 2);
+      check("nothing free", waitlist.preview(free(), strategy).isEmpty());
+      matches = waitlist.preview(free(1, 2, 3, 4, 5), strategy);
+      check("large request served", customers(matches).equals(Arrays.asList("large")));
+
+      // une demande groupée n'obtient que des sièges adjacents
+      waitlist = new Waitlist();
+      waitlist.add("group", 1, 2, true, 0, null);
+      matches = waitlist.preview(free(1, 2, 4, 5, 6), strategy);
+      check("grouped request", matches.size() == 1
+              && Arrays.equals(matches.get(0).getSeats(), new int[]{4, 5, 6}));
+      check("grouped request waits", waitlist.preview(free(1, 2, 4, 5), strategy).isEmpty());
+
+      // retrait d'une demande et demandes invalides
+      waitlist = new Waitlist();
+      Waitlist.Request gone = waitlist.add("gone", 0, 1, false, 9, null);
+      waitlist.add("stays", 0, 1, false, 0, null);
+      check("request removed", waitlist.remove(gone) && !waitlist.remove(gone)
+              && customers(waitlist.preview(free(1), strategy)).equals(Arrays.asList("stays")));
+      boolean rejected = false;
+      try {
+        waitlist.add("nobody", 0, 0, false, 0, null);
+      } catch (IllegalArgumentException e) {
+        rejected = true;
+      }
+      check("empty request rejected", rejected);
+
+      // ajouts concurrents: aucune demande perdue, l'ordre d'arrivée est total
+      final Waitlist shared = new Waitlist();
+      Thread[] threads = new Thread[MAX_THREADS];
+      for (int t = 0; t < MAX_THREADS; t++) {
+        final int id = t;
+        threads[t] = new Thread() {
+          @Override
+          public void run() {
+            for (int i = 0; i < MAX_REQUESTS; i++) {
+              shared.add("t" + id + "#" + i, 0, 1, false, i % 3, null);
+            }
+          }
+        };
+        threads[t].start();
+      }
+      for (Thread thread : threads) {
+        thread.join();
+      }
+      check("concurrent additions", shared.size() == MAX_THREADS * MAX_REQUESTS);
+      seats = new SeatMap(1, MAX_THREADS * MAX_REQUESTS);
+      for (int seat = 1; seat <= MAX_THREADS * MAX_REQUESTS; seat++) {
+        seats.release(seat);
+      }
+      matches = shared.preview(seats, strategy);
+      boolean ordered = matches.size() == MAX_THREADS * MAX_REQUESTS;
+      int[] last = new int[MAX_THREADS];
+      Arrays.fill(last, -1);
+      int priority = Integer.MAX_VALUE;
+      for (Waitlist.Match match : matches) {
+        String customer = match.getRequest().getCustomer();
+        int thread = Integer.parseInt(customer.substring(1, customer.indexOf('#')));
+        int rank = Integer.parseInt(customer.substring(customer.indexOf('#') + 1));
+        if (match.getRequest().getPriority() != priority) {
+          ordered &= match.getRequest().getPriority() < priority;
+          priority = match.getRequest().getPriority();
+          Arrays.fill(last, -1);
+        }
+        // à priorité égale, les demandes d'un même thread restent dans leur ordre d'arrivée
+        ordered &= rank > last[thread];
+        last[thread] = rank;
+      }
+      check("concurrent requests in order", ordered);
+
+      // chemin réel par DataAccess, si une base est donnée
+      if (args.length == 3) {
+        checkDataAccess(args[0], args[1], args[2]);
+      }
+
+    } catch (Exception e) {
+
+      System.err.println("test aborted: " + e);
+      e.printStackTrace();
+
+    }
+
+    // print test results
+    if (testTotal == 0) {
+      System.out.println("no test performed");
+    } else {
+      String r = "test results: ";
+      r += "total=" + testTotal;
+      r += ", ok=" + testOK + " (" + ((testOK * 100) / testTotal) + "%)";
+      System.out.println(r);
+    }
+
+  }
+}
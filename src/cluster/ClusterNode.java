@@ -0,0 +1,536 @@
+package cluster;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import model.DataAccess;
+import model.DataAccessException;
+import model.SeatAllocationStrategy;
+import model.SeatMap;
+
+/**
+ * A booking node of a cluster. The seats of the venue are split into
+ * partitions (ranges of consecutive seats), and each partition is owned by
+ * exactly one live node: the owner keeps the state of the partition in
+ * memory, takes all the booking decisions for it, and writes them through to
+ * the shared {@link SeatStore}. A node receiving a request for a partition it
+ * does not own forwards it to the owner.
+ * <p>
+ * Ownership is computed by every node from the set of live nodes (rendezvous
+ * hashing), so that no coordination is needed beyond the {@link Membership}.
+ * When a node fails, its partitions are spread over the remaining nodes,
+ * which reload them from the store on first use. Ownership changes are not
+ * fenced: an operation in progress on a node that is wrongly suspected to
+ * have failed may still complete after its partition has been handed over.
+ * <p>
+ * Bookings are made within a single partition, grouped or not, and are
+ * therefore limited to the size of a partition.
+ * <p>
+ * The nodes find each other through a {@link Membership} and a
+ * {@link Transport}. Only in-JVM implementations of both are provided
+ * ({@link LocalMembership} and {@link LocalTransport}): as shipped, the cluster
+ * mode runs all its nodes in a single JVM, as a model of partition ownership
+ * and failover. The nodes share the database through a
+ * {@link DataAccessSeatStore}, but {@link DataAccess#book} and the booking
+ * server do not go through them: running nodes in separate processes needs
+ * network implementations of both interfaces, which are not part of this
+ * package.
+ */
+public class ClusterNode implements Membership.Listener {
+
+  //
+  // CONSTANTS
+  //
+  private static final int BOOK = 1;
+  private static final int CANCEL = 2;
+  private static final int AVAILABLE = 3;
+  private static final int MAX_HOPS = 3;
+  private static final int MAX_BOOKING_ATTEMPTS = 3;
+  private static final int[] CLOSED = new int[0];    // résultat d'une opération sur une partition cédée
+
+  //
+  // HELPER CLASSES
+  //
+  /**
+   * A request forwarded to the owner of a partition.
+   */
+  public static final class Request {
+
+    final int operation;
+    final int partition;
+    final String customer;
+    final int childCount;
+    final int adultCount;
+    final boolean groupedSeats;
+    final int[] seats;
+    final int hops;
+
+    Request(int operation, int partition, String customer, int childCount, int adultCount,
+            boolean groupedSeats, int[] seats, int hops) {
+      this.operation = operation;
+      this.partition = partition;
+      this.customer = customer;
+      this.childCount = childCount;
+      this.adultCount = adultCount;
+      this.groupedSeats = groupedSeats;
+      this.seats = seats;
+      this.hops = hops;
+    }
+
+    Request forwarded() {
+      return new Request(operation, partition, customer, childCount, adultCount, groupedSeats, seats, hops + 1);
+    }
+
+    @Override
+    public String toString() {
+      return "Request{" + "operation=" + operation + ", partition=" + partition + ", customer=" + customer + '}';
+    }
+  }
+
+  /**
+   * The in-memory state of a partition owned by this node.
+   */
+  private static final class Partition {
+
+    final int first;
+    final SeatMap free;
+    final String[] customers;
+    final int[] classes;
+    boolean closed;
+
+    Partition(int first, int end) {
+      this.first = first;
+      this.free = new SeatMap(first, end - first);
+      this.customers = new String[end - first];
+      this.classes = new int[end - first];
+    }
+  }
+
+  //
+  // FIELDS
+  //
+  private final String id;
+  private final int firstSeat;
+  private final int seatCount;
+  private final int partitionCount;
+  private final Membership membership;
+  private final Transport transport;
+  private final SeatStore store;
+  private final ConcurrentHashMap<Integer, Partition> partitions = new ConcurrentHashMap<>();
+  private volatile SeatAllocationStrategy allocationStrategy = SeatAllocationStrategy.FIRST_FIT;
+  private volatile List<String> liveNodes = new ArrayList<>();
+  private ScheduledExecutorService heartbeats;
+
+  //
+  // CONSTRUCTORS
+  //
+  /**
+   * Creates a new node. The node takes part in the cluster once started.
+   *
+   * @param id the identifier of the node, unique in the cluster
+   * @param firstSeat the number of the first seat of the venue
+   * @param seatCount the number of seats of the venue
+   * @param partitionCount the number of partitions the seats are split into
+   * @param membership the membership of the cluster
+   * @param transport the transport used to forward requests
+   * @param store the store of the seats
+   */
+  public ClusterNode(String id, int firstSeat, int seatCount, int partitionCount,
+          Membership membership, Transport transport, SeatStore store) {
+    if (partitionCount <= 0 || partitionCount > seatCount) {
+      throw new IllegalArgumentException("bad partition count: " + partitionCount);
+    }
+    this.id = id;
+    this.firstSeat = firstSeat;
+    this.seatCount = seatCount;
+    this.partitionCount = partitionCount;
+    this.membership = membership;
+    this.transport = transport;
+    this.store = store;
+  }
+
+  //
+  // METHODS
+  //
+  /**
+   * Returns the identifier of this node.
+   *
+   * @return the identifier of this node
+   */
+  public String getId() {
+    return id;
+  }
+
+  /**
+   * Sets the strategy used to pick the booked seats within a partition.
+   *
+   * @param strategy the seat allocation strategy
+   */
+  public void setAllocationStrategy(SeatAllocationStrategy strategy) {
+    if (strategy == null) {
+      throw new NullPointerException("strategy");
+    }
+    this.allocationStrategy = strategy;
+  }
+
+  /**
+   * Makes this node join the cluster and start sending heartbeats.
+   *
+   * @param heartbeatMillis the period of the heartbeats, in milliseconds; it
+   * must be well below the failure timeout of the membership
+   */
+  public synchronized void start(long heartbeatMillis) {
+    transport.register(this);
+    membership.addListener(this);
+    membership.join(id);
+    heartbeats = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "heartbeat-" + id);
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    heartbeats.scheduleAtFixedRate(new Runnable() {
+      @Override
+      public void run() {
+        membership.heartbeat(id);
+        // détecte au passage les noeuds silencieux
+        membership.getLiveNodes();
+      }
+    }, heartbeatMillis, heartbeatMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Makes this node leave the cluster. Its partitions are handed over to the
+   * remaining nodes immediately.
+   */
+  public void stop() {
+    halt();
+    membership.leave(id);
+  }
+
+  /**
+   * Stops this node without leaving the cluster, as a crash would: the other
+   * nodes notice the failure when they cannot reach the node, or when its
+   * heartbeats time out.
+   */
+  public synchronized void halt() {
+    if (heartbeats != null) {
+      heartbeats.shutdownNow();
+      heartbeats = null;
+    }
+    transport.unregister(id);
+    membership.removeListener(this);
+    for (Partition partition : partitions.values()) {
+      close(partition);
+    }
+    partitions.clear();
+  }
+
+  /**
+   * Books the specified number of seats for the specified customer, in a
+   * single partition. The partitions are tried in turn, starting from one
+   * derived from the customer, until one of them can hold the booking. For a
+   * grouped booking, the seats of the children come first.
+   *
+   * @param customer the customer who makes the booking
+   * @param childCount the number of seats to book for children
+   * @param adultCount the number of seats to book for adults
+   * @param groupedSeats <code>true</code> if the booked seats must be grouped,
+   * and <code>false</code> otherwise
+   * @return the booked seats, or <code>null</code> if no partition could hold
+   * the booking
+   * @throws DataAccessException if an unrecoverable error occurs
+   */
+  public int[] book(String customer, int childCount, int adultCount, boolean groupedSeats) throws DataAccessException {
+    if (customer == null || childCount < 0 || adultCount < 0 || childCount + adultCount == 0) {
+      return null;
+    }
+    int start = (customer.hashCode() & Integer.MAX_VALUE) % partitionCount;
+    for (int i = 0; i < partitionCount; i++) {
+      int partition = (start + i) % partitionCount;
+      int[] seats = route(new Request(BOOK, partition, customer, childCount, adultCount, groupedSeats, null, 0));
+      if (seats != null) {
+        return seats;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Cancels the booking of the specified seats by the specified customer.
+   * Seats that are not booked by the customer are ignored.
+   *
+   * @param customer the customer who cancels the booking
+   * @param seats the seats to cancel
+   * @return the seats actually cancelled
+   * @throws DataAccessException if an unrecoverable error occurs
+   */
+  public int[] cancel(String customer, int[] seats) throws DataAccessException {
+    int[] cancelled = new int[seats.length];
+    int n = 0;
+    for (int partition = 0; partition < partitionCount; partition++) {
+      int[] mine = new int[seats.length];
+      int m = 0;
+      for (int seat : seats) {
+        if (partitionOf(seat) == partition) {
+          mine[m++] = seat;
+        }
+      }
+      if (m > 0) {
+        int[] done = route(new Request(CANCEL, partition, customer, 0, 0, false, Arrays.copyOf(mine, m), 0));
+        System.arraycopy(done, 0, cancelled, n, done.length);
+        n += done.length;
+      }
+    }
+    return Arrays.copyOf(cancelled, n);
+  }
+
+  /**
+   * Returns the number of free seats of the venue.
+   *
+   * @return the number of free seats
+   * @throws DataAccessException if an unrecoverable error occurs
+   */
+  public int getAvailableCount() throws DataAccessException {
+    int count = 0;
+    for (int partition = 0; partition < partitionCount; partition++) {
+      count += route(new Request(AVAILABLE, partition, null, 0, 0, false, null, 0))[0];
+    }
+    return count;
+  }
+
+  /**
+   * Returns the identifier of the node owning the specified partition.
+   *
+   * @param partition the index of the partition
+   * @return the identifier of the owner, or <code>null</code> if the cluster
+   * is empty
+   */
+  public String getOwner(int partition) {
+    String owner = null;
+    long best = Long.MIN_VALUE;
+    for (String node : liveNodes) {
+      long score = mix(node.hashCode() * 0x9E3779B97F4A7C15L + partition);
+      if (owner == null || score > best) {
+        owner = node;
+        best = score;
+      }
+    }
+    return owner;
+  }
+
+  /**
+   * Returns the number of partitions currently loaded in memory by this
+   * node.
+   *
+   * @return the number of loaded partitions
+   */
+  public int getLoadedPartitionCount() {
+    return partitions.size();
+  }
+
+  @Override
+  public void membershipChanged(List<String> liveNodes) {
+    this.liveNodes = liveNodes;
+    // on oublie les partitions dont on n'est plus propriétaire: si on le redevient,
+    //  elles seront relues dans le store
+    for (Integer partition : new ArrayList<>(partitions.keySet())) {
+      if (!id.equals(getOwner(partition))) {
+        Partition p = partitions.remove(partition);
+        if (p != null) {
+          close(p);
+        }
+      }
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "ClusterNode{" + "id=" + id + ", partitions=" + partitions.keySet() + '}';
+  }
+
+  /**
+   * Handles a request received from another node.
+   *
+   * @param request the request
+   * @return the result of the request
+   * @throws DataAccessException if the request cannot be handled
+   */
+  int[] handle(Request request) throws DataAccessException {
+    if (request.hops > MAX_HOPS) {
+      throw new DataAccessException("no stable owner for partition " + request.partition);
+    }
+    return route(request);
+  }
+
+  // Exécute la requête si on est propriétaire de la partition, la transmet sinon
+  private int[] route(Request request) throws DataAccessException {
+    while (true) {
+      if (liveNodes.isEmpty()) {
+        liveNodes = membership.getLiveNodes();
+      }
+      String owner = getOwner(request.partition);
+      if (owner == null) {
+        throw new DataAccessException("no live node in the cluster");
+      }
+      if (owner.equals(id)) {
+        int[] result = execute(request);
+        if (result != CLOSED) {
+          return result;
+        }
+        // la partition a changé de propriétaire pendant l'opération: on recommence
+        continue;
+      }
+      try {
+        return transport.send(owner, request.forwarded());
+      } catch (IOException e) {
+        // le propriétaire est injoignable: on le considère en panne et on recommence
+        membership.leave(owner);
+        liveNodes = membership.getLiveNodes();
+      }
+    }
+  }
+
+  private int[] execute(Request request) throws DataAccessException {
+    Partition partition = load(request.partition);
+    synchronized (partition) {
+      if (partition.closed) {
+        return CLOSED;
+      }
+      switch (request.operation) {
+        case BOOK:
+          return book(partition, request);
+        case CANCEL:
+          return cancel(partition, request);
+        case AVAILABLE:
+          return new int[]{partition.free.getFreeCount()};
+        default:
+          throw new DataAccessException("unknown operation: " + request.operation);
+      }
+    }
+  }
+
+  // Réserve dans la partition; null si elle ne peut pas contenir la réservation, ou si des écritures
+  //  faites hors de ce noeud font échouer chaque tentative
+  private int[] book(Partition partition, Request request) throws DataAccessException {
+    int[] classes = DataAccess.seatClasses(request.childCount, request.adultCount, request.groupedSeats);
+    for (int attempt = 0; attempt < MAX_BOOKING_ATTEMPTS; attempt++) {
+      int[] seats = allocationStrategy.allocate(partition.free, classes.length, request.groupedSeats);
+      if (seats == null) {
+        return null;
+      }
+      int written = 0;
+      try {
+        for (; written < seats.length; written++) {
+          store.book(request.customer, seats[written], classes[written]);
+          partition.customers[seats[written] - partition.first] = request.customer;
+          partition.classes[seats[written] - partition.first] = classes[written];
+        }
+        return seats;
+      } catch (DataAccessException e) {
+        // tout ou rien: on annule les écritures déjà faites
+        for (int i = 0; i < written; i++) {
+          store.release(request.customer, seats[i], classes[i]);
+        }
+        // le siège refusé a pu être réservé par un autre écrivain: on relit la partition
+        read(partition);
+        if (partition.customers[seats[written] - partition.first] == null) {
+          // le siège est toujours libre: l'échec ne vient pas d'un conflit
+          throw e;
+        }
+      }
+    }
+    return null;
+  }
+
+  private int[] cancel(Partition partition, Request request) throws DataAccessException {
+    int[] cancelled = new int[request.seats.length];
+    int n = 0;
+    for (int seat : request.seats) {
+      int i = seat - partition.first;
+      if (i >= 0 && i < partition.customers.length && request.customer != null
+              && request.customer.equals(partition.customers[i])) {
+        store.release(request.customer, seat, partition.classes[i]);
+        partition.customers[i] = null;
+        partition.classes[i] = 0;
+        partition.free.release(seat);
+        cancelled[n++] = seat;
+      }
+    }
+    return Arrays.copyOf(cancelled, n);
+  }
+
+  // Retourne la partition en mémoire, en la lisant dans le store si besoin (prise de relais)
+  private Partition load(int index) throws DataAccessException {
+    Partition partition = partitions.get(index);
+    if (partition != null) {
+      return partition;
+    }
+    synchronized (this) {
+      partition = partitions.get(index);
+      if (partition == null) {
+        int first = firstOf(index);
+        int end = firstOf(index + 1);
+        partition = new Partition(first, end);
+        read(partition);
+        partitions.put(index, partition);
+      }
+      return partition;
+    }
+  }
+
+  // Relit l'état de la partition dans le store
+  private void read(Partition partition) throws DataAccessException {
+    int end = partition.first + partition.customers.length;
+    store.load(partition.first, end, partition.customers, partition.classes);
+    for (int seat = partition.first; seat < end; seat++) {
+      int i = seat - partition.first;
+      if (partition.customers[i] == null && partition.classes[i] != -1) {
+        partition.free.release(seat);
+      } else {
+        partition.free.take(seat);
+      }
+    }
+  }
+
+  private void close(Partition partition) {
+    synchronized (partition) {
+      partition.closed = true;
+    }
+  }
+
+  // Premier siège de la partition: les tailles des partitions diffèrent d'au plus un siège,
+  //  et aucune n'est vide
+  private int firstOf(int partition) {
+    return firstSeat + (int) ((long) partition * seatCount / partitionCount);
+  }
+
+  // Partition du siège, inverse de firstOf()
+  private int partitionOf(int seat) {
+    long offset = seat - (long) firstSeat;
+    if (offset < 0 || offset >= seatCount) {
+      return -1;
+    }
+    return (int) ((offset * partitionCount + partitionCount - 1) / seatCount);
+  }
+
+  // Fonction de mélange de MurmurHash3
+  private static long mix(long h) {
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  }
+
+}
@@ -0,0 +1,69 @@
+package cluster;
+
+import java.sql.SQLException;
+
+import model.DataAccess;
+import model.DataAccessException;
+
+/**
+ * A seat store backed by the database, through a {@link DataAccess} object
+ * dedicated to the node.
+ */
+public class DataAccessSeatStore implements SeatStore {
+
+  //
+  // FIELDS
+  //
+  private final DataAccess store;
+
+  //
+  // CONSTRUCTORS
+  //
+  /**
+   * Creates a new store using the specified data access object. The object
+   * must not be used by anyone else.
+   *
+   * @param store the data access object to use
+   */
+  public DataAccessSeatStore(DataAccess store) {
+    this.store = store;
+  }
+
+  //
+  // METHODS
+  //
+  @Override
+  public synchronized void load(int first, int end, String[] customers, int[] classes) throws DataAccessException {
+    try {
+      if (!store.getSeats(first, end, customers, classes)) {
+        throw new DataAccessException("unable to read seats " + first + " to " + end);
+      }
+    } catch (SQLException e) {
+      throw new DataAccessException(e);
+    }
+  }
+
+  @Override
+  public synchronized void book(String customer, int seat, int cl) throws DataAccessException {
+    try {
+      // le siège n'est écrit que s'il est libre: un propriétaire périmé n'écrase pas une réservation
+      if (!store.insertEntry(seat, cl, customer)) {
+        throw new DataAccessException("seat " + seat + " already booked");
+      }
+    } catch (SQLException e) {
+      throw new DataAccessException(e);
+    }
+  }
+
+  @Override
+  public synchronized void release(String customer, int seat, int cl) throws DataAccessException {
+    try {
+      if (!store.removeEntry(seat, cl, customer)) {
+        throw new DataAccessException("seat " + seat + " not booked by " + customer);
+      }
+    } catch (SQLException e) {
+      throw new DataAccessException(e);
+    }
+  }
+
+}
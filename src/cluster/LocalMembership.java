@@ -0,0 +1,125 @@
+package cluster;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A membership of nodes running in the same JVM: the heartbeats are recorded
+ * in memory, and the failure timeout is checked on every read of the live
+ * nodes.
+ */
+public class LocalMembership implements Membership {
+
+  //
+  // FIELDS
+  //
+  private final long timeoutNanos;
+  private final Map<String, Long> heartbeats = new HashMap<>();
+  private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+  private List<String> liveNodes = Collections.emptyList();
+
+  //
+  // CONSTRUCTORS
+  //
+  /**
+   * Creates a new, empty, cluster membership.
+   *
+   * @param timeoutMillis the time after which a silent node is considered to
+   * have failed, in milliseconds
+   */
+  public LocalMembership(long timeoutMillis) {
+    this.timeoutNanos = timeoutMillis * 1000000L;
+  }
+
+  //
+  // METHODS
+  //
+  @Override
+  public void addListener(Listener listener) {
+    listeners.add(listener);
+  }
+
+  @Override
+  public void removeListener(Listener listener) {
+    listeners.remove(listener);
+  }
+
+  @Override
+  public void join(String node) {
+    List<String> changed;
+    synchronized (this) {
+      heartbeats.put(node, System.nanoTime());
+      changed = update();
+    }
+    notify(changed);
+  }
+
+  @Override
+  public void heartbeat(String node) {
+    synchronized (this) {
+      if (heartbeats.containsKey(node)) {
+        heartbeats.put(node, System.nanoTime());
+      }
+    }
+  }
+
+  @Override
+  public void leave(String node) {
+    List<String> changed;
+    synchronized (this) {
+      heartbeats.remove(node);
+      changed = update();
+    }
+    notify(changed);
+  }
+
+  @Override
+  public List<String> getLiveNodes() {
+    List<String> changed;
+    List<String> live;
+    synchronized (this) {
+      changed = update();
+      live = liveNodes;
+    }
+    notify(changed);
+    return live;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "LocalMembership{" + "liveNodes=" + liveNodes + '}';
+  }
+
+  // Retire les noeuds silencieux et retourne la nouvelle liste si elle a changé
+  private List<String> update() {
+    long now = System.nanoTime();
+    List<String> live = new ArrayList<>();
+    for (Map.Entry<String, Long> entry : new ArrayList<>(heartbeats.entrySet())) {
+      if (now - entry.getValue() > timeoutNanos) {
+        heartbeats.remove(entry.getKey());
+      } else {
+        live.add(entry.getKey());
+      }
+    }
+    Collections.sort(live);
+    if (live.equals(liveNodes)) {
+      return null;
+    }
+    liveNodes = Collections.unmodifiableList(live);
+    return liveNodes;
+  }
+
+  // Les écouteurs sont appelés hors du verrou, pour qu'ils puissent nous rappeler
+  private void notify(List<String> changed) {
+    if (changed != null) {
+      for (Listener listener : listeners) {
+        listener.membershipChanged(changed);
+      }
+    }
+  }
+
+}
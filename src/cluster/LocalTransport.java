@@ -0,0 +1,41 @@
+package cluster;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+
+import model.DataAccessException;
+
+/**
+ * A transport between nodes running in the same JVM: requests are handed
+ * directly to the target node, in the calling thread.
+ */
+public class LocalTransport implements Transport {
+
+  //
+  // FIELDS
+  //
+  private final ConcurrentHashMap<String, ClusterNode> nodes = new ConcurrentHashMap<>();
+
+  //
+  // METHODS
+  //
+  @Override
+  public void register(ClusterNode node) {
+    nodes.put(node.getId(), node);
+  }
+
+  @Override
+  public void unregister(String node) {
+    nodes.remove(node);
+  }
+
+  @Override
+  public int[] send(String node, ClusterNode.Request request) throws IOException, DataAccessException {
+    ClusterNode target = nodes.get(node);
+    if (target == null) {
+      throw new IOException("node " + node + " unreachable");
+    }
+    return target.handle(request);
+  }
+
+}
@@ -0,0 +1,88 @@
+package cluster;
+
+import java.util.List;
+
+/**
+ * Keeps track of the live nodes of a cluster. Nodes join the cluster, then
+ * send heartbeats periodically; a node that has not sent a heartbeat for
+ * longer than the failure timeout is considered to have failed and is removed
+ * from the cluster, and so is a node that another node could not reach.
+ * <p>
+ * Every change of the set of live nodes is notified to the registered
+ * listeners, which is how partition ownership is handed over, see
+ * {@link ClusterNode}.
+ * <p>
+ * Only {@link LocalMembership} is provided, for nodes running in the same
+ * JVM: nodes in separate processes need an implementation sharing the
+ * heartbeats between them, together with a matching {@link Transport}.
+ *
+ * @see LocalMembership
+ */
+public interface Membership {
+
+  //
+  // HELPER CLASSES
+  //
+  /**
+   * Receives the changes of the set of live nodes.
+   */
+  interface Listener {
+
+    /**
+     * Called after the set of live nodes has changed.
+     *
+     * @param liveNodes the live nodes, sorted by identifier
+     */
+    void membershipChanged(List<String> liveNodes);
+  }
+
+  //
+  // METHODS
+  //
+  /**
+   * Registers a listener of the membership changes.
+   *
+   * @param listener the listener to register
+   */
+  void addListener(Listener listener);
+
+  /**
+   * Unregisters a listener of the membership changes.
+   *
+   * @param listener the listener to unregister
+   */
+  void removeListener(Listener listener);
+
+  /**
+   * Adds the specified node to the cluster.
+   *
+   * @param node the identifier of the node
+   */
+  void join(String node);
+
+  /**
+   * Records a heartbeat of the specified node. Heartbeats of nodes that are
+   * not (or no longer) part of the cluster are ignored: a node removed from
+   * the cluster must join it again.
+   *
+   * @param node the identifier of the node
+   */
+  void heartbeat(String node);
+
+  /**
+   * Removes the specified node from the cluster, either because it leaves it
+   * or because it is suspected to have failed.
+   *
+   * @param node the identifier of the node
+   */
+  void leave(String node);
+
+  /**
+   * Returns the live nodes of the cluster. Nodes whose last heartbeat is older
+   * than the failure timeout are removed first.
+   *
+   * @return the live nodes, sorted by identifier
+   */
+  List<String> getLiveNodes();
+
+}
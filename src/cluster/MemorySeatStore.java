@@ -0,0 +1,85 @@
+package cluster;
+
+import model.DataAccessException;
+
+/**
+ * A seat store kept in memory. It stands for the database when a cluster is
+ * run in a single JVM, e.g. for testing.
+ */
+public class MemorySeatStore implements SeatStore {
+
+  //
+  // FIELDS
+  //
+  private final int first;
+  private final String[] customers;
+  private final int[] classes;
+
+  //
+  // CONSTRUCTORS
+  //
+  /**
+   * Creates a new store of the specified seats, all of them free.
+   *
+   * @param first the number of the first seat
+   * @param count the number of seats
+   */
+  public MemorySeatStore(int first, int count) {
+    this.first = first;
+    this.customers = new String[count];
+    this.classes = new int[count];
+  }
+
+  //
+  // METHODS
+  //
+  @Override
+  public synchronized void load(int first, int end, String[] customers, int[] classes) throws DataAccessException {
+    for (int seat = first; seat < end; seat++) {
+      int i = seat - this.first;
+      boolean exists = i >= 0 && i < this.customers.length;
+      customers[seat - first] = exists ? this.customers[i] : null;
+      classes[seat - first] = exists ? this.classes[i] : -1;
+    }
+  }
+
+  @Override
+  public synchronized void book(String customer, int seat, int cl) throws DataAccessException {
+    int i = index(seat);
+    if (customers[i] != null) {
+      throw new DataAccessException("seat " + seat + " already booked by " + customers[i]);
+    }
+    customers[i] = customer;
+    classes[i] = cl;
+  }
+
+  @Override
+  public synchronized void release(String customer, int seat, int cl) throws DataAccessException {
+    int i = index(seat);
+    if (customer == null || !customer.equals(customers[i])) {
+      throw new DataAccessException("seat " + seat + " not booked by " + customer);
+    }
+    customers[i] = null;
+    classes[i] = 0;
+  }
+
+  /**
+   * Returns the customer who booked the specified seat.
+   *
+   * @param seat the seat number
+   * @return the customer, or <code>null</code> if the seat is free
+   * @throws DataAccessException if the seat does not exist
+   */
+  public synchronized String getCustomer(int seat) throws DataAccessException {
+    return customers[index(seat)];
+  }
+
+  private int index(int seat) throws DataAccessException {
+    int i = seat - first;
+    if (i < 0 || i >= customers.length) {
+      throw new DataAccessException("no such seat: " + seat);
+    }
+    return i;
+  }
+
+}
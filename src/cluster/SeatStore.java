@@ -0,0 +1,51 @@
+package cluster;
+
+import model.DataAccessException;
+
+/**
+ * The persistent store of the seats, shared by all the nodes of a cluster.
+ * The node that owns a range of seats reads it from the store when it takes
+ * the range over, and writes every booking and cancellation of the range
+ * through to the store, so that the range survives the failure of its owner.
+ */
+public interface SeatStore {
+
+  /**
+   * Reads the state of the seats numbered from <code>first</code> (included)
+   * to <code>end</code> (excluded): for the seat <code>first + i</code>, the
+   * customer who booked it (<code>null</code> if it is free) is stored in
+   * <code>customers[i]</code> and its class in <code>classes[i]</code>. The
+   * class of a free seat is 0, and the class of a seat that does not exist
+   * is -1.
+   *
+   * @param first the first seat to read
+   * @param end the seat following the last seat to read
+   * @param customers the array receiving the customers of the seats
+   * @param classes the array receiving the classes of the seats
+   * @throws DataAccessException if the seats cannot be read
+   */
+  void load(int first, int end, String[] customers, int[] classes) throws DataAccessException;
+
+  /**
+   * Records the booking of the specified seat. The seat must be free in the
+   * store: a seat booked by anyone is never overwritten.
+   *
+   * @param customer the customer who booked the seat
+   * @param seat the seat number
+   * @param cl the price class of the seat
+   * @throws DataAccessException if the seat is already booked, or if the
+   * booking cannot be recorded
+   */
+  void book(String customer, int seat, int cl) throws DataAccessException;
+
+  /**
+   * Records the cancellation of the specified seat.
+   *
+   * @param customer the customer who booked the seat
+   * @param seat the seat number
+   * @param cl the price class of the seat
+   * @throws DataAccessException if the cancellation cannot be recorded
+   */
+  void release(String customer, int seat, int cl) throws DataAccessException;
+
+}
@@ -0,0 +1,45 @@
+package cluster;
+
+import java.io.IOException;
+
+import model.DataAccessException;
+
+/**
+ * Carries the requests that a node forwards to the owner of a partition.
+ * <p>
+ * Only {@link LocalTransport} is provided, for nodes running in the same JVM:
+ * nodes in separate processes need an implementation carrying the requests
+ * and their results over the network, together with a matching
+ * {@link Membership}.
+ *
+ * @see LocalTransport
+ */
+public interface Transport {
+
+  /**
+   * Makes the specified node reachable through this transport.
+   *
+   * @param node the node
+   */
+  void register(ClusterNode node);
+
+  /**
+   * Makes the specified node unreachable through this transport.
+   *
+   * @param node the identifier of the node
+   */
+  void unregister(String node);
+
+  /**
+   * Sends the specified request to the specified node, and returns its
+   * result.
+   *
+   * @param node the identifier of the node
+   * @param request the request to send
+   * @return the result of the request
+   * @throws IOException if the node cannot be reached
+   * @throws DataAccessException if the node failed to handle the request
+   */
+  int[] send(String node, ClusterNode.Request request) throws IOException, DataAccessException;
+
+}
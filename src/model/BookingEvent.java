@@ -0,0 +1,122 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * A booking or a cancellation, as published on a {@link BookingFeed}.
+ */
+public class BookingEvent {
+
+  //
+  // CONSTANTS
+  //
+  /**
+   * The type of a booking event.
+   */
+  public enum Type {
+    BOOKING, CANCELLATION
+  }
+
+  //
+  // FIELDS
+  //
+  private final long sequence;
+  private final Type type;
+  private final String customer;
+  private final int[] seats;
+  private final int[] classes;
+  private final long amountDeltaCents;
+  private final long timestamp;
+
+  //
+  // CONSTRUCTORS
+  //
+  BookingEvent(long sequence, Type type, String customer, int[] seats, int[] classes, long amountDeltaCents, long timestamp) {
+    this.sequence = sequence;
+    this.type = type;
+    this.customer = customer;
+    this.seats = seats;
+    this.classes = classes;
+    this.amountDeltaCents = amountDeltaCents;
+    this.timestamp = timestamp;
+  }
+
+  //
+  // METHODS
+  //
+  @Override
+  public String toString() {
+    return "BookingEvent{" + "sequence=" + sequence + ", type=" + type + ", customer=" + customer
+            + ", seats=" + Arrays.toString(seats) + ", classes=" + Arrays.toString(classes)
+            + ", amountDeltaCents=" + amountDeltaCents + ", timestamp=" + timestamp + '}';
+  }
+
+  /**
+   * Returns the position of the event in the feed. Sequence numbers start at
+   * 0 and have no gaps.
+   *
+   * @return the sequence number of the event
+   */
+  public long getSequence() {
+    return sequence;
+  }
+
+  public Type getType() {
+    return type;
+  }
+
+  public String getCustomer() {
+    return customer;
+  }
+
+  /**
+   * Returns the number of seats booked or cancelled.
+   *
+   * @return the number of seats
+   */
+  public int getSeatCount() {
+    return seats.length;
+  }
+
+  /**
+   * Returns the specified seat booked or cancelled.
+   *
+   * @param i the index of the seat, from 0 to {@link #getSeatCount()}
+   * excluded
+   * @return the seat number
+   */
+  public int getSeat(int i) {
+    return seats[i];
+  }
+
+  /**
+   * Returns the price class of the specified seat.
+   *
+   * @param i the index of the seat, from 0 to {@link #getSeatCount()}
+   * excluded
+   * @return the price class of the seat
+   */
+  public int getSeatClass(int i) {
+    return classes[i];
+  }
+
+  /**
+   * Returns the change of the customer's total amount, in cents: positive
+   * for a booking, negative for a cancellation.
+   *
+   * @return the change of the amount, in cents
+   */
+  public long getAmountDeltaCents() {
+    return amountDeltaCents;
+  }
+
+  /**
+   * Returns the time of the event, in milliseconds since the epoch.
+   *
+   * @return the time of the event
+   */
+  public long getTimestamp() {
+    return timestamp;
+  }
+
+}
@@ -0,0 +1,256 @@
+package model;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * An ordered stream of booking and cancellation events, for the downstream
+ * consumers that would otherwise poll the <code>BOOKINGS</code> and
+ * <code>ORDERS</code> tables.
+ * <p>
+ * Events are stored in a lock-free ring buffer: publishers claim a sequence
+ * number with an atomic increment, and each subscriber follows the buffer
+ * with its own cursor, in its own thread. When the slowest subscriber lags a
+ * whole buffer behind, publishers wait for it (back-pressure) rather than
+ * overwrite events it has not consumed yet. Events published while there is
+ * no subscriber are not kept.
+ * <p>
+ * The feed can be shared by several {@link DataAccess} objects, see
+ * {@link DataAccess#setBookingFeed(BookingFeed)}.
+ */
+public class BookingFeed {
+
+  //
+  // CONSTANTS
+  //
+  private static final long PARK_NANOS = 100000;   // 0.1 ms
+  private static final long SEALED = Long.MIN_VALUE;  // bit de claimed posé par close()
+
+  //
+  // HELPER CLASSES
+  //
+  /**
+   * Delivers the events of the feed to a subscriber.
+   */
+  private final class Consumer extends Thread {
+
+    private final BookingSubscriber subscriber;
+    private final AtomicLong cursor;   // dernier événement consommé
+
+    Consumer(BookingSubscriber subscriber, long cursor) {
+      super("feed-" + subscriber);
+      this.subscriber = subscriber;
+      this.cursor = new AtomicLong(cursor);
+      setDaemon(true);
+    }
+
+    @Override
+    public void run() {
+      long next = cursor.get() + 1;
+      while (true) {
+        long available = available(next);
+        if (available < next) {
+          if (closed && claimedCount() == next) {
+            break;
+          }
+          LockSupport.parkNanos(PARK_NANOS);
+          continue;
+        }
+        for (; next <= available; next++) {
+          BookingEvent event = events[(int) next & mask];
+          try {
+            subscriber.onEvent(event, next == available);
+          } catch (Exception e) {
+            System.out.println("Subscriber " + subscriber + " failed on event " + next + ": " + e);
+          }
+        }
+        // le slot peut maintenant être réutilisé par les producteurs
+        cursor.set(available);
+      }
+      try {
+        subscriber.close();
+      } catch (Exception e) {
+        System.out.println("Unable to close subscriber " + subscriber + ": " + e);
+      }
+    }
+  }
+
+  //
+  // FIELDS
+  //
+  private final int mask;
+  private final BookingEvent[] events;
+  private final AtomicLongArray published;
+  private final AtomicLong claimed;   // prochain numéro à attribuer, scellé (SEALED) à la fermeture
+  private final CopyOnWriteArrayList<Consumer> consumers = new CopyOnWriteArrayList<>();
+  private volatile boolean closed = false;
+
+  //
+  // CONSTRUCTORS
+  //
+  /**
+   * Creates a new feed, whose first event has sequence number 0.
+   *
+   * @param capacity the number of events the ring buffer can hold, rounded
+   * up to a power of two
+   */
+  public BookingFeed(int capacity) {
+    this(capacity, 0);
+  }
+
+  /**
+   * Creates a new feed, whose first event has the specified sequence number,
+   * so that a restarted feed can continue the sequence of the events already
+   * written, see {@link NdjsonFileSubscriber#nextSequence(java.io.File)}.
+   *
+   * @param capacity the number of events the ring buffer can hold, rounded
+   * up to a power of two
+   * @param firstSequence the sequence number of the first event
+   */
+  public BookingFeed(int capacity, long firstSequence) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("capacity must be positive: " + capacity);
+    }
+    if (firstSequence < 0) {
+      throw new IllegalArgumentException("sequence must not be negative: " + firstSequence);
+    }
+    this.claimed = new AtomicLong(firstSequence);
+    int size = Math.max(Integer.highestOneBit(capacity - 1) << 1, 1);
+    this.mask = size - 1;
+    this.events = new BookingEvent[size];
+    this.published = new AtomicLongArray(size);
+    for (int i = 0; i < size; i++) {
+      published.set(i, -1);
+    }
+  }
+
+  //
+  // METHODS
+  //
+  /**
+   * Registers a subscriber. The subscriber receives the events published
+   * from now on.
+   *
+   * @param subscriber the subscriber
+   */
+  public synchronized void subscribe(BookingSubscriber subscriber) {
+    if (closed) {
+      throw new IllegalStateException("feed closed");
+    }
+    Consumer consumer = new Consumer(subscriber, claimedCount() - 1);
+    consumers.add(consumer);
+    consumer.start();
+  }
+
+  /**
+   * Publishes an event, waiting for the slowest subscriber if the ring buffer
+   * is full.
+   *
+   * @param type the type of the event
+   * @param customer the customer who booked or cancelled the seats
+   * @param seats the seats booked or cancelled
+   * @param classes the price classes of the seats
+   * @param amountDeltaCents the change of the customer's total amount, in
+   * cents
+   * @return the event published
+   * @throws IllegalStateException if the feed is closed
+   */
+  public BookingEvent publish(BookingEvent.Type type, String customer, int[] seats, int[] classes, long amountDeltaCents) {
+    // le numéro n'est attribué que si le flux n'est pas scellé: les abonnés attendent donc
+    //  tout numéro attribué avant de s'arrêter
+    long sequence;
+    do {
+      sequence = claimed.get();
+      if (sequence < 0) {
+        throw new IllegalStateException("feed closed");
+      }
+    } while (!claimed.compareAndSet(sequence, sequence + 1));
+    BookingEvent event = new BookingEvent(sequence, type, customer, seats, classes, amountDeltaCents, System.currentTimeMillis());
+    // back-pressure: on attend que le slot ait été consommé par tous les abonnés
+    while (sequence - events.length > slowest()) {
+      if (closed && !consuming()) {
+        // plus aucun abonné ne libérera le slot
+        throw new IllegalStateException("feed closed");
+      }
+      LockSupport.parkNanos(PARK_NANOS);
+    }
+    int slot = (int) sequence & mask;
+    events[slot] = event;
+    published.set(slot, sequence);
+    return event;
+  }
+
+  /**
+   * Returns the number of events published so far.
+   *
+   * @return the number of events published
+   */
+  public long getPublishedCount() {
+    return claimedCount();
+  }
+
+  /**
+   * Returns how many events the slowest subscriber has yet to consume.
+   *
+   * @return the lag of the slowest subscriber
+   */
+  public long getLag() {
+    return claimedCount() - 1 - slowest();
+  }
+
+  /**
+   * Closes the feed: no event can be published any more, and the subscribers
+   * are closed once they have consumed the events already published.
+   *
+   * @throws InterruptedException if interrupted while waiting for the
+   * subscribers
+   */
+  public void close() throws InterruptedException {
+    synchronized (this) {
+      // scelle les numéros avant d'annoncer la fermeture: un abonné qui voit closed voit
+      //  le nombre définitif d'événements
+      long count;
+      do {
+        count = claimed.get();
+      } while (count >= 0 && !claimed.compareAndSet(count, count | SEALED));
+      closed = true;
+    }
+    for (Consumer consumer : consumers) {
+      consumer.join();
+    }
+  }
+
+  // Retourne le dernier événement publié sans trou à partir de next (next - 1 si aucun)
+  private long available(long next) {
+    long sequence = next;
+    while (published.get((int) sequence & mask) == sequence) {
+      sequence++;
+    }
+    return sequence - 1;
+  }
+
+  private long claimedCount() {
+    return claimed.get() & ~SEALED;
+  }
+
+  // Vrai si un abonné au moins consomme encore des événements
+  private boolean consuming() {
+    for (Consumer consumer : consumers) {
+      if (consumer.isAlive()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private long slowest() {
+    long slowest = Long.MAX_VALUE;
+    for (Consumer consumer : consumers) {
+      slowest = Math.min(slowest, consumer.cursor.get());
+    }
+    return slowest;
+  }
+
+}
@@ -1,30 +1,86 @@
 package model;
 
-import java.util.Collections;
+import java.util.AbstractList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
 
 /**
  * Defines a booking: the customer who made it, the total amount, the order date, and the number of booked seats.
+ * <p>
+ * The booking is immutable and compact: the amount is kept in cents, the date
+ * as a number of milliseconds since the epoch, and the seats in a primitive
+ * array, as runs of consecutive seat numbers when this takes less space (a
+ * grouped booking is a single run). The seats can be read without allocating
+ * through {@link #getSeatCount()}, {@link #getSeat(int)} and
+ * {@link #copySeats(int[], int)}; {@link #getSeats()}, {@link #getAmount()}
+ * and {@link #getDate()} are kept for compatibility.
  * @author Jean-Michel Busca
  */
 public class BookingInfo {
-  
+
+  /**
+   * The timestamp of a booking without date.
+   */
+  public static final long NO_DATE = Long.MIN_VALUE;
+
   private final String customer;
-  private final float amount;
-  private final Date date;
-  private final List<Integer> seats;
+  private final long amountCents;
+  private final long timestamp;
+  private final int[] runs;        // séries de sièges consécutifs, voir encode()
+  private final int seatCount;
 
   public BookingInfo(String customer, float amount, Date date, List<Integer> seats) {
     this.customer = customer;
-    this.amount = amount;
-    this.date = date;
-    this.seats = Collections.unmodifiableList(seats);
+    this.amountCents = Math.round(amount * 100.0);
+    this.timestamp = date == null ? NO_DATE : date.getTime();
+    int[] s = new int[seats.size()];
+    int i = 0;
+    for (int seat : seats) {
+      s[i++] = seat;
+    }
+    this.runs = encode(s, s.length);
+    this.seatCount = s.length;
+  }
+
+  /**
+   * Creates a new booking.
+   *
+   * @param customer the customer who made the booking
+   * @param amountCents the total amount, in cents
+   * @param timestamp the date of the order, in milliseconds since the epoch,
+   * or {@link #NO_DATE}
+   * @param seats the booked seats; the array is not kept
+   */
+  public BookingInfo(String customer, long amountCents, long timestamp, int[] seats) {
+    this(customer, amountCents, timestamp, seats, seats.length);
+  }
+
+  /**
+   * Creates a new booking.
+   *
+   * @param customer the customer who made the booking
+   * @param amountCents the total amount, in cents
+   * @param timestamp the date of the order, in milliseconds since the epoch,
+   * or {@link #NO_DATE}
+   * @param seats the booked seats, in the <code>count</code> first elements of
+   * the array; the array is not kept
+   * @param count the number of booked seats
+   */
+  public BookingInfo(String customer, long amountCents, long timestamp, int[] seats, int count) {
+    this.customer = customer;
+    this.amountCents = amountCents;
+    this.timestamp = timestamp;
+    this.runs = encode(seats, count);
+    this.seatCount = count;
   }
 
   @Override
   public String toString() {
-    return "BookingInfo{" + "customer=" + customer + ", amount=" + amount + ", date=" + date + ", seats=" + seats + '}';
+    return "BookingInfo{" + "customer=" + customer + ", amount=" + getAmount() + ", date=" + getDate() + ", seats=" + getSeats() + '}';
   }
 
   public String getCustomer() {
@@ -32,15 +88,185 @@ public class BookingInfo {
   }
 
   public float getAmount() {
-    return amount;
+    return amountCents / 100f;
   }
 
+  /**
+   * Returns the total amount of the booking, exactly.
+   *
+   * @return the total amount, in cents
+   */
+  public long getAmountCents() {
+    return amountCents;
+  }
+
+  /**
+   * Returns the date of the order. A new object is returned on each call.
+   *
+   * @return the date of the order, or <code>null</code> if there is none
+   */
   public Date getDate() {
-    return date;
+    return timestamp == NO_DATE ? null : new Date(timestamp);
+  }
+
+  /**
+   * Returns the date of the order.
+   *
+   * @return the date of the order, in milliseconds since the epoch, or
+   * {@link #NO_DATE}
+   */
+  public long getTimestamp() {
+    return timestamp;
   }
 
+  /**
+   * Returns an unmodifiable view of the booked seats. The seat numbers are
+   * boxed when read; prefer {@link #getSeat(int)} or
+   * {@link #copySeats(int[], int)}.
+   *
+   * @return the booked seats
+   */
   public List<Integer> getSeats() {
-    return seats;
+    return new SeatList();
+  }
+
+  /**
+   * Returns the number of booked seats.
+   *
+   * @return the number of booked seats
+   */
+  public int getSeatCount() {
+    return seatCount;
+  }
+
+  /**
+   * Returns the specified booked seat.
+   *
+   * @param i the index of the seat, from 0 to {@link #getSeatCount()}
+   * excluded
+   * @return the seat number
+   */
+  public int getSeat(int i) {
+    if (i < 0 || i >= seatCount) {
+      throw new IndexOutOfBoundsException("seat " + i + " of " + seatCount);
+    }
+    if (runs.length == seatCount) {
+      return runs[i];
+    }
+    // recherche dichotomique de la première série finissant après i
+    int low = 0;
+    int high = runs.length / 2 - 1;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (runs[2 * mid + 1] <= i) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return runs[2 * low] + i - (low == 0 ? 0 : runs[2 * low - 1]);
+  }
+
+  /**
+   * Copies the booked seats into the specified array.
+   *
+   * @param dest the array to copy the seats to
+   * @param offset the index of <code>dest</code> where to copy the first
+   * seat
+   * @return the number of seats copied
+   */
+  public int copySeats(int[] dest, int offset) {
+    if (runs.length == seatCount) {
+      System.arraycopy(runs, 0, dest, offset, seatCount);
+      return seatCount;
+    }
+    int n = offset;
+    for (int r = 0; r < runs.length; r += 2) {
+      for (int seat = runs[r]; n < offset + runs[r + 1]; seat++) {
+        dest[n++] = seat;
+      }
+    }
+    return seatCount;
+  }
+
+  // Code les sièges en séries de numéros consécutifs, dans l'ordre donné:
+  //  paires (premier siège, indice du siège suivant la série); si les séries
+  //  n'occupent pas moins de place que les sièges, les sièges sont gardés tels quels
+  private static int[] encode(int[] seats, int count) {
+    int n = 0;
+    for (int i = 0; i < count; i++) {
+      if (i == 0 || seats[i] != seats[i - 1] + 1) {
+        n++;
+      }
+    }
+    if (2 * n >= count) {
+      return Arrays.copyOf(seats, count);
+    }
+    int[] runs = new int[2 * n];
+    int r = -2;
+    for (int i = 0; i < count; i++) {
+      if (i == 0 || seats[i] != seats[i - 1] + 1) {
+        r += 2;
+        runs[r] = seats[i];
+      }
+      runs[r + 1] = i + 1;
+    }
+    return runs;
+  }
+
+  /**
+   * A read-only view of the booked seats.
+   */
+  private final class SeatList extends AbstractList<Integer> implements RandomAccess {
+
+    @Override
+    public Integer get(int index) {
+      return getSeat(index);
+    }
+
+    @Override
+    public int size() {
+      return seatCount;
+    }
+
+    @Override
+    public Iterator<Integer> iterator() {
+      // parcours série par série, sans recherche de la série de chaque siège
+      return new Iterator<Integer>() {
+        private int next = 0;
+        private int run = 0;
+
+        @Override
+        public boolean hasNext() {
+          return next < seatCount;
+        }
+
+        @Override
+        public Integer next() {
+          if (next >= seatCount) {
+            throw new NoSuchElementException();
+          }
+          if (runs.length == seatCount) {
+            return runs[next++];
+          }
+          if (next == runs[run + 1]) {
+            run += 2;
+          }
+          return runs[run] + next++ - (run == 0 ? 0 : runs[run - 1]);
+        }
+      };
+    }
+
+    @Override
+    public Object[] toArray() {
+      int[] seats = new int[seatCount];
+      copySeats(seats, 0);
+      Integer[] boxed = new Integer[seatCount];
+      for (int i = 0; i < seatCount; i++) {
+        boxed[i] = seats[i];
+      }
+      return boxed;
+    }
   }
-  
+
 }
@@ -0,0 +1,28 @@
+package model;
+
+/**
+ * Consumes the events of a {@link BookingFeed}. Each subscriber runs in its
+ * own thread, and receives every event of the feed, in sequence order.
+ */
+public interface BookingSubscriber {
+
+  /**
+   * Called for each event of the feed. Events are delivered in batches: the
+   * last event of a batch is flagged, so that a subscriber can defer costly
+   * work (e.g. flushing a file) to the end of the batch.
+   *
+   * @param event the event
+   * @param endOfBatch <code>true</code> if no other event is available yet
+   * @throws Exception if the event cannot be consumed; the exception is
+   * reported and the event is skipped
+   */
+  void onEvent(BookingEvent event, boolean endOfBatch) throws Exception;
+
+  /**
+   * Called once the feed is closed, after the last event has been delivered.
+   *
+   * @throws Exception if the subscriber cannot be closed
+   */
+  void close() throws Exception;
+
+}
@@ -0,0 +1,198 @@
+package model;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Serializes the operations of each customer without serializing the
+ * operations of different customers. Customers are mapped to a fixed set of
+ * locks (<i>stripes</i>) by hashing their name: two operations of the same
+ * customer always take the same lock and are therefore performed one after
+ * the other, whereas operations of customers mapped to different stripes
+ * proceed in parallel.
+ * <p>
+ * Each stripe records how often it was acquired, how often the acquiring
+ * thread had to wait for it, and for how long, so that the number of stripes
+ * can be tuned.
+ * <p>
+ * The locks are shared by all the {@link DataAccess} objects connected to the
+ * same database in this JVM, see {@link #forDatabase(String)}.
+ */
+public class CustomerLocks {
+
+  //
+  // CONSTANTS
+  //
+  /**
+   * The default number of stripes.
+   */
+  public static final int DEFAULT_STRIPES = 64;
+
+  //
+  // CLASS FIELDS
+  //
+  private static final ConcurrentHashMap<String, CustomerLocks> LOCKS = new ConcurrentHashMap<>();
+
+  //
+  // FIELDS
+  //
+  private final ReentrantLock[] stripes;
+  private final AtomicLongArray acquisitions;
+  private final AtomicLongArray contentions;
+  private final AtomicLongArray waitNanos;
+
+  //
+  // CONSTRUCTORS
+  //
+  /**
+   * Creates a new set of locks with the specified number of stripes.
+   *
+   * @param stripes the number of stripes, rounded up to a power of two
+   */
+  public CustomerLocks(int stripes) {
+    if (stripes <= 0) {
+      throw new IllegalArgumentException("stripes must be positive: " + stripes);
+    }
+    int n = Integer.highestOneBit(stripes - 1) << 1;
+    this.stripes = new ReentrantLock[Math.max(n, 1)];
+    for (int i = 0; i < this.stripes.length; i++) {
+      this.stripes[i] = new ReentrantLock();
+    }
+    this.acquisitions = new AtomicLongArray(this.stripes.length);
+    this.contentions = new AtomicLongArray(this.stripes.length);
+    this.waitNanos = new AtomicLongArray(this.stripes.length);
+  }
+
+  //
+  // CLASS METHODS
+  //
+  /**
+   * Returns the locks shared by all the users of the specified database.
+   *
+   * @param url the url of the database
+   * @return the locks of the database
+   */
+  public static CustomerLocks forDatabase(String url) {
+    CustomerLocks locks = LOCKS.get(url);
+    if (locks == null) {
+      CustomerLocks created = new CustomerLocks(DEFAULT_STRIPES);
+      locks = LOCKS.putIfAbsent(url, created);
+      if (locks == null) {
+        locks = created;
+      }
+    }
+    return locks;
+  }
+
+  //
+  // METHODS
+  //
+  /**
+   * Returns the stripe of the specified customer.
+   *
+   * @param customer the customer; may be <code>null</code>
+   * @return the index of the stripe of the customer
+   */
+  public int stripeOf(String customer) {
+    if (customer == null) {
+      return 0;
+    }
+    int h = customer.hashCode();
+    h ^= (h >>> 16);
+    return h & (stripes.length - 1);
+  }
+
+  /**
+   * Acquires the lock of the specified customer, waiting for it if
+   * necessary. The caller must release it with {@link #unlock(String)}.
+   *
+   * @param customer the customer; may be <code>null</code>
+   */
+  public void lock(String customer) {
+    int stripe = stripeOf(customer);
+    ReentrantLock lock = stripes[stripe];
+    if (!lock.tryLock()) {
+      long start = System.nanoTime();
+      lock.lock();
+      contentions.incrementAndGet(stripe);
+      waitNanos.addAndGet(stripe, System.nanoTime() - start);
+    }
+    acquisitions.incrementAndGet(stripe);
+  }
+
+  /**
+   * Releases the lock of the specified customer.
+   *
+   * @param customer the customer; may be <code>null</code>
+   */
+  public void unlock(String customer) {
+    stripes[stripeOf(customer)].unlock();
+  }
+
+  /**
+   * Returns the number of stripes.
+   *
+   * @return the number of stripes
+   */
+  public int getStripeCount() {
+    return stripes.length;
+  }
+
+  /**
+   * Returns how many times the specified stripe was acquired.
+   *
+   * @param stripe the index of the stripe
+   * @return the number of acquisitions of the stripe
+   */
+  public long getAcquisitions(int stripe) {
+    return acquisitions.get(stripe);
+  }
+
+  /**
+   * Returns how many times a thread had to wait for the specified stripe.
+   *
+   * @param stripe the index of the stripe
+   * @return the number of contended acquisitions of the stripe
+   */
+  public long getContentions(int stripe) {
+    return contentions.get(stripe);
+  }
+
+  /**
+   * Returns the total time threads spent waiting for the specified stripe.
+   *
+   * @param stripe the index of the stripe
+   * @param unit the unit of the returned time
+   * @return the total waiting time of the stripe
+   */
+  public long getWaitTime(int stripe, TimeUnit unit) {
+    return unit.convert(waitNanos.get(stripe), TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Returns the number of threads currently waiting for the specified stripe.
+   *
+   * @param stripe the index of the stripe
+   * @return the number of waiting threads
+   */
+  public int getQueueLength(int stripe) {
+    return stripes[stripe].getQueueLength();
+  }
+
+  @Override
+  public String toString() {
+    long acquired = 0;
+    long contended = 0;
+    long waited = 0;
+    for (int i = 0; i < stripes.length; i++) {
+      acquired += acquisitions.get(i);
+      contended += contentions.get(i);
+      waited += waitNanos.get(i);
+    }
+    return "CustomerLocks{" + "stripes=" + stripes.length + ", acquisitions=" + acquired
+            + ", contentions=" + contended + ", waitMillis=" + waited / 1000000 + '}';
+  }
+
+}
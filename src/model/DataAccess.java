@@ -1,8 +1,9 @@
 package model;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
-import java.util.Date;
+import java.util.List;
 import java.sql.*;
 
 /**
@@ -13,6 +14,10 @@ import java.sql.*;
  * The constructor and the methods of this class all throw a
  * {@link DataAccessException} whenever an unrecoverable error occurs.
  * <b>Beware</b>: constraint violations are <b>not</b> considered unrecoverable.
+ * <p>
+ * The bookings and cancellations of a given customer are serialized among all
+ * the <code>DataAccess</code> objects of the JVM connected to the same
+ * database, see {@link CustomerLocks}; those of different customers are not.
  *
  * @author Jean-Michel Busca
  */
@@ -25,10 +30,84 @@ public class DataAccess {
   public static int CHILD_PRICE = 25;
   public static int ADULT_PRICE = 50;
 
+  // Les requêtes émises, dont QueryPlanTest vérifie les plans d'exécution
+  public static final String SQL_SELECT_PRICES = "SELECT * FROM PRICES";
+  public static final String SQL_BOOK_SEAT = "UPDATE BOOKINGS SET CLASS = ?, CUSTOMER = ? WHERE SEAT = ? AND CUSTOMER IS NULL";
+  public static final String SQL_RELEASE_SEAT = "UPDATE BOOKINGS SET CLASS = null, CUSTOMER = null WHERE SEAT = ? AND CLASS = ? AND CUSTOMER = ?";
+  public static final String SQL_DEBIT_ORDER = "UPDATE ORDERS SET AMOUNT=AMOUNT-? WHERE CUSTOMER=?";
+  public static final String SQL_SELECT_SEAT_RANGE = "SELECT SEAT, CUSTOMER, CLASS FROM BOOKINGS WHERE SEAT >= ? AND SEAT < ?";
+  public static final String SQL_SELECT_AMOUNT = "SELECT AMOUNT FROM ORDERS WHERE CUSTOMER=?";
+  public static final String SQL_SELECT_CUSTOMER_CLASSES = "SELECT SEAT, CLASS FROM BOOKINGS WHERE CUSTOMER=?";
+  public static final String SQL_CANCEL_CLASS = "UPDATE BOOKINGS SET CUSTOMER=null, CLASS=null where CLASS=? AND CUSTOMER=?";
+  public static final String SQL_CANCEL_SEATS = "UPDATE BOOKINGS SET CUSTOMER=null, CLASS=null"
+          + " WHERE SEAT IN (SELECT cid FROM "
+          + "(SELECT SEAT as cid FROM BOOKINGS WHERE CLASS=? AND CUSTOMER=?)"
+          + " as C )"
+          + "LIMIT ?";
+  public static final String SQL_SELECT_CUSTOMER_SEATS = "SELECT SEAT FROM BOOKINGS WHERE CUSTOMER=?";
+  public static final String SQL_SELECT_FREE_SEATS = "SELECT SEAT FROM BOOKINGS WHERE CUSTOMER IS NULL";
+  public static final String SQL_SELECT_LATEST_ORDER = "SELECT * FROM ORDERS ORDER BY ORDERS.ODATE DESC LIMIT 1";
+  public static final String SQL_SELECT_CUSTOMER_ORDER = "SELECT * FROM ORDERS WHERE CUSTOMER=? ORDER BY ORDERS.ODATE DESC LIMIT 1";
+
+  // Les requêtes des triggers, pour la ligne NEW de BOOKINGS
+  public static final String TRIGGER_COUNT_ORDERS = "SELECT COUNT(*) FROM ORDERS WHERE CUSTOMER = NEW.CUSTOMER";
+  public static final String TRIGGER_INSERT_ORDER = "INSERT INTO ORDERS VALUES (NEW.CUSTOMER,0,NOW())";
+  public static final String TRIGGER_UPDATE_AMOUNT = "UPDATE ORDERS SET AMOUNT = (SELECT PRICE FROM PRICES WHERE CLASS = 1)"
+          + "*(SELECT COUNT(*) FROM BOOKINGS WHERE CLASS = 1 AND CUSTOMER = NEW.CUSTOMER)"
+          + "+(SELECT PRICE FROM PRICES WHERE CLASS = 2)"
+          + "*(SELECT COUNT(*) FROM BOOKINGS WHERE CLASS = 2 AND CUSTOMER = NEW.CUSTOMER)"
+          + " WHERE CUSTOMER = NEW.CUSTOMER";
+
+  /**
+   * Returns the classes of the seats of a booking, in the order of its seats:
+   * children first for a grouped booking, so that they sit next to each
+   * other, and adults first otherwise.
+   *
+   * @param childCount the number of seats booked for children
+   * @param adultCount the number of seats booked for adults
+   * @param groupedSeats <code>true</code> if the seats are grouped
+   * @return the class of each seat of the booking
+   */
+  public static int[] seatClasses(int childCount, int adultCount, boolean groupedSeats) {
+    int firstClass = groupedSeats ? CHILD : ADULT;
+    int firstCount = groupedSeats ? childCount : adultCount;
+    int secondClass = groupedSeats ? ADULT : CHILD;
+    int[] classes = new int[childCount + adultCount];
+    for(int i = 0; i < classes.length; i++)
+        classes[i] = i < firstCount ? firstClass : secondClass;
+    return classes;
+  }
+
+  // Nombre de tentatives d'une réservation dont les sièges sont pris entre-temps par un autre client
+  private static final int MAX_BOOKING_ATTEMPTS = 3;
+
+  String url = null;
   Connection conn = null;
   PreparedStatement ps = null;
   ResultSet rs = null;
 
+  // Stratégie de choix des sièges utilisée par book()
+  SeatAllocationStrategy allocationStrategy = SeatAllocationStrategy.FIRST_FIT;
+
+  // Plan de la salle (rangées, allées), null si les sièges forment une seule ligne
+  VenueLayout layout = null;
+
+  // Index des sièges libres du plan de salle, partagé avec les autres DataAccess connectés
+  //  à la même base et tenu à jour à chaque réservation et annulation; null sans plan de salle
+  VenueSeats venueSeats = null;
+
+  // Lectures partagées avec les autres DataAccess connectés à la même base
+  ReadCoalescer reads = null;
+
+  // Liste d'attente des réservations non satisfaites, null si aucune
+  Waitlist waitlist = null;
+
+  // Flux des réservations et annulations, null si aucun
+  BookingFeed feed = null;
+
+  // Verrous par client partagés avec les autres DataAccess connectés à la même base
+  CustomerLocks locks = null;
+
   /**
    * Creates a new <code>DataAccess</code> object that itneracts with the
    * specified database, using the specified login and password. Each object
@@ -44,6 +123,9 @@ public class DataAccess {
    * @throws java.sql.SQLException
    */
   public DataAccess(String url, String login, String password) throws DataAccessException, ClassNotFoundException, SQLException {
+    this.url = url;
+    this.reads = ReadCoalescer.forDatabase(url);
+    this.locks = CustomerLocks.forDatabase(url);
     try {
         // Initialisation du driver de connexion mySQL
         Class.forName("com.mysql.jdbc.Driver" );
@@ -74,7 +156,7 @@ public class DataAccess {
   public void getPrices() throws SQLException{
       try{
         // Préparation de la requête de récupération des prix
-        ps = this.conn.prepareStatement("SELECT * FROM PRICES;");
+        ps = this.conn.prepareStatement(SQL_SELECT_PRICES);
         rs = ps.executeQuery();
 
         // Parcours du ResultSet retourné à l'exécution de la requête
@@ -97,6 +179,30 @@ public class DataAccess {
       }
   }
 
+  /**
+   * Creates the tables of the database and populates them for a venue of the
+   * specified size, all seats being free, see {@link Schema}. Any previous
+   * content of the database is lost. The triggers are created again and the
+   * prices read again.
+   *
+   * @param seats the number of seats of the venue
+   * @throws DataAccessException if the database cannot be created
+   */
+  public void createDatabase(int seats) throws DataAccessException {
+    try{
+        Schema.create(this.conn);
+        Schema.populate(this.conn, seats, CHILD_PRICE, ADULT_PRICE);
+        System.out.println("Database created.");
+        this.createTriggerBeforeBooking();
+        this.getPrices();
+        reads.invalidate();
+        if(venueSeats != null)
+            invalidateVenueSeats();
+    }catch(SQLException e){
+        throw new DataAccessException(e);
+    }
+  }
+
   /**
    * Création des triggers dans la base
    *
@@ -105,9 +211,9 @@ public class DataAccess {
   public void createTriggerBeforeBooking() throws SQLException{
       try{
         // Création d'un trigger ajoutant l'utilisateur dans la base ORDERS avant réservation si absent
-        String addCustomer = "CREATE TRIGGER `before_booking_update` BEFORE UPDATE ON `BOOKINGS` FOR EACH ROW BEGIN IF (SELECT COUNT(*) FROM `ORDERS` WHERE CUSTOMER = NEW.CUSTOMER) = 0 AND NEW.CUSTOMER IS NOT NULL THEN INSERT INTO `ORDERS` VALUES (NEW.CUSTOMER,0,NOW()); END IF; END";
+        String addCustomer = "CREATE TRIGGER `before_booking_update` BEFORE UPDATE ON `BOOKINGS` FOR EACH ROW BEGIN IF (" + TRIGGER_COUNT_ORDERS + ") = 0 AND NEW.CUSTOMER IS NOT NULL THEN " + TRIGGER_INSERT_ORDER + "; END IF; END";
         // Création d'un trigger mettant à jour le montant de l'ORDER d'un client après modification de la table BOOKINGS
-        String updateCustomerAmount = "CREATE TRIGGER `after_booking_update` AFTER UPDATE ON `BOOKINGS` FOR EACH ROW BEGIN IF NEW.CUSTOMER IS NOT NULL THEN UPDATE ORDERS SET AMOUNT = (SELECT PRICE FROM PRICES WHERE CLASS = 1)*(SELECT COUNT(*) FROM BOOKINGS WHERE CLASS = 1 AND CUSTOMER = NEW.CUSTOMER)+(SELECT PRICE FROM PRICES WHERE CLASS = 2)*(SELECT COUNT(*) FROM BOOKINGS WHERE CLASS = 2 AND CUSTOMER = NEW.CUSTOMER) WHERE CUSTOMER = NEW.CUSTOMER; END IF; END;";
+        String updateCustomerAmount = "CREATE TRIGGER `after_booking_update` AFTER UPDATE ON `BOOKINGS` FOR EACH ROW BEGIN IF NEW.CUSTOMER IS NOT NULL THEN " + TRIGGER_UPDATE_AMOUNT + "; END IF; END;";
         // Préparation et exécution de la requête
         ps = this.conn.prepareStatement(addCustomer);
         ps.execute();
@@ -141,76 +247,237 @@ public class DataAccess {
    * <code>null</code> if one of the booking criterion could not be satisfied
    * @throws DataAccessException if an unrecoverable error occurs
    * @throws java.sql.SQLException
+   * @see #setAllocationStrategy(SeatAllocationStrategy)
    */
   public BookingInfo book(String customer, int childCount, int adultCount, boolean groupedSeats) throws DataAccessException, SQLException {
-
+    // Les opérations d'un même client sont exécutées l'une après l'autre
+    locks.lock(customer);
     try{
-        // ArrayList dans laquelle sont stockés les sièges libre et exécution de la méthode getAvailableSeats pour la récupération
-        //  de ces derniers
-        ArrayList <Integer> seatsTable = getAvailableSeats();
-
-        // Si aucun siège libre, on retourne pour stoper l'exécution
-        if(seatsTable == null){
-            System.out.println("Aucun siège disponible dans les conditions établies.");
-            return null;
-        }
+        return doBook(customer, childCount, adultCount, groupedSeats);
+    }finally{
+        locks.unlock(customer);
+    }
+  }
 
-        // Calcul du coût total de la réservation
-        int amount = childCount * CHILD_PRICE + adultCount * ADULT_PRICE;
-        // Déclaration d'une instance de classe Data contenant la date actuelle
-        Date today = new java.util.Date();
+  private BookingInfo doBook(String customer, int childCount, int adultCount, boolean groupedSeats) throws DataAccessException, SQLException {
 
-        // Si une demande de siège groupés a été effectuée
-        if(groupedSeats){
-            // On récupère l'index du premier siège à partir duquel la réservation groupée peut se faire
-            int startIndex = findIndexForGroupedSeats(childCount,adultCount,seatsTable);
+    if(childCount < 0 || adultCount < 0)
+        return null;
 
-            // Si -1, alors indisponible. On stoppe l'exécution
-            if(startIndex == -1)
+    try{
+        // Si un des sièges choisis est réservé entre-temps par un autre client, on recommence
+        //  avec les sièges libres relus
+        for(int attempt = 0; attempt < MAX_BOOKING_ATTEMPTS; attempt++){
+            // ArrayList dans laquelle sont stockés les sièges libre et exécution de la méthode getAvailableSeats pour la récupération
+            //  de ces derniers
+            ArrayList <Integer> seatsTable = getAvailableSeats(true);
+
+            // Si aucun siège libre, on retourne pour stoper l'exécution
+            if(seatsTable == null){
+                System.out.println("Aucun siège disponible dans les conditions établies.");
                 return null;
+            }
 
-            // Sinon on écrit dans la base les réservations
-            for(int i = 0; i < childCount; i++)
-                insertEntry(startIndex+i,CHILD,customer);
-            for(int i = 0; i < adultCount; i++)
-                insertEntry(startIndex+childCount+i,ADULT,customer);
+            // Choix des sièges en mémoire selon la stratégie d'allocation; avec un plan de salle,
+            //  les sièges groupés ne franchissent ni une fin de rangée ni une allée
+            SeatMap map = layout == null ? SeatMap.of(seatsTable) : layout.seatMap(seatsTable);
+            int[] seats = allocationStrategy.allocate(map, childCount + adultCount, groupedSeats);
 
-            // Puis instanciation d'un nouveau BookingInfo retourné
-            BookingInfo booking = new BookingInfo(customer,amount,today,seatsTable);
-            return booking;
+            // Si null, alors indisponible. On stoppe l'exécution
+            if(seats == null)
+                return null;
+
+            BookingInfo booking = insertBooking(customer, childCount, adultCount, groupedSeats, seats);
+            if(booking != null)
+                return booking;
         }
-        else{
-            // Si la demande de sièges groupés n'a pas été effectuée, on teste le nombre de places disponibles
-            if(seatsTable.size() >= childCount+adultCount){
+    }catch(SQLException e){
+        // Levée d'une exception SQL en cas d'erreur lors de l'exécution
+        System.out.println("SQL error, unable to update data.");
+    }
+    return null;
+  }
 
-                // Puis on parcourt l'ArrayList
-                Iterator <Integer> it = seatsTable.iterator();
+  /**
+   * Books the specified number of seats for the specified customer, as
+   * {@link #book(String, int, int, boolean)} does. If the booking cannot be
+   * satisfied, the request is added to the waitlist set with
+   * {@link #setWaitlist(Waitlist)}, and the specified listener is notified
+   * once seats are freed and the request has been booked.
+   *
+   * @param customer the customer who makes the booking
+   * @param childCount the number of seats to book for children
+   * @param adultCount the number of seats to book for adults
+   * @param groupedSeats <code>true</code> if the booked seats must be grouped,
+   * and <code>false</code> otherwise
+   * @param priority the priority of the request in the waitlist; higher
+   * priorities are served first
+   * @param listener the listener to notify when the request is booked from the
+   * waitlist
+   * @return a booking info object if the booking was successful, or
+   * <code>null</code> if the request has been added to the waitlist; seats
+   * freed in the meantime are matched at once, so that the listener may have
+   * been notified already
+   * @throws DataAccessException if an unrecoverable error occurs, or if no
+   * waitlist is set
+   * @throws java.sql.SQLException
+   */
+  public BookingInfo book(String customer, int childCount, int adultCount, boolean groupedSeats, int priority, WaitlistListener listener) throws DataAccessException, SQLException {
+    if(waitlist == null)
+        throw new DataAccessException("no waitlist set");
+    BookingInfo booking = book(customer, childCount, adultCount, groupedSeats);
+    if(booking == null && childCount >= 0 && adultCount >= 0 && childCount + adultCount > 0){
+        waitlist.add(customer, childCount, adultCount, groupedSeats, priority, listener);
+        // une annulation survenue entre l'échec et l'ajout n'a pas vu la demande: on relance
+        //  la mise en correspondance pour qu'elle n'attende pas la prochaine annulation
+        fulfilWaitlist();
+    }
+    return booking;
+  }
 
-                int counter = 0;
+  /**
+   * Books the specified number of seats for the specified customer, as
+   * adjacent seats of the same row, preferably in the specified section of
+   * the venue layout set with {@link #setVenueLayout(VenueLayout)}. The
+   * booking is performed in a all or nothing fashion.
+   *
+   * @param customer the customer who makes the booking
+   * @param childCount the number of seats to book for children
+   * @param adultCount the number of seats to book for adults
+   * @param preferredSection the name of the section to book in if possible;
+   * <code>null</code> if any section will do
+   * @return a booking info object if the booking was successful, or
+   * <code>null</code> if no row could hold the seats
+   * @throws DataAccessException if an unrecoverable error occurs, or if no
+   * venue layout is set
+   * @throws java.sql.SQLException
+   */
+  public BookingInfo book(String customer, int childCount, int adultCount, String preferredSection) throws DataAccessException, SQLException {
+    locks.lock(customer);
+    try{
+        return doBook(customer, childCount, adultCount, preferredSection);
+    }finally{
+        locks.unlock(customer);
+    }
+  }
 
-                // On parcourt ensuite les places et inscrivons à la suite chaque adulte puis chaque enfant
-                while(it.hasNext() && counter < adultCount){
-                    insertEntry(it.next(),ADULT,customer);
-                    counter ++;
-                }
+  private BookingInfo doBook(String customer, int childCount, int adultCount, String preferredSection) throws DataAccessException, SQLException {
 
-                while(it.hasNext() && counter < adultCount + childCount){
-                    insertEntry(it.next(),CHILD,customer);
-                    counter ++;
+    if(layout == null)
+        throw new DataAccessException("no venue layout set");
+    if(childCount < 0 || adultCount < 0)
+        return null;
+
+    try{
+        for(int attempt = 0; attempt < MAX_BOOKING_ATTEMPTS; attempt++){
+            // Recherche par rangée dans l'index partagé, à l'aide du résumé des séries libres
+            //  de chaque rangée. L'index n'est relu dans la base que s'il n'est pas chargé, ou
+            //  si aucune rangée ne convient: il ignore les sièges libérés par d'autres processus
+            int[] seats;
+            synchronized(venueSeats){
+                boolean reloaded = !venueSeats.isLoaded();
+                if(reloaded)
+                    venueSeats.reload(getAvailableSeats(true));
+                seats = venueSeats.takeGrouped(childCount + adultCount, preferredSection);
+                if(seats == null && !reloaded){
+                    venueSeats.reload(getAvailableSeats(true));
+                    seats = venueSeats.takeGrouped(childCount + adultCount, preferredSection);
                 }
+            }
+            if(seats == null)
+                return null;
 
-                // Finalement instanciation d'un nouveau BookingInfo retourné
-                BookingInfo booking = new BookingInfo(customer,amount,today,seatsTable);
+            // null si un des sièges a été réservé entre-temps hors de l'index, qui est alors
+            //  invalidé: on recommence avec l'index relu
+            BookingInfo booking = insertBooking(customer, childCount, adultCount, true, seats);
+            if(booking != null)
                 return booking;
-            }
         }
     }catch(SQLException e){
-        // Levée d'une exception SQL en cas d'erreur lors de l'exécution
         System.out.println("SQL error, unable to update data.");
     }
     return null;
   }
 
+  /**
+   * Ecrit dans la base les réservations des sièges choisis et retourne le BookingInfo
+   *  correspondant: les enfants d'abord pour une réservation groupée, les adultes
+   *  d'abord sinon. Si un des sièges a été réservé entre-temps par un autre client,
+   *  les sièges déjà écrits sont libérés et null est retourné. L'index du plan de salle
+   *  est mis à jour, ou invalidé en cas d'échec
+   */
+  private BookingInfo insertBooking(String customer, int childCount, int adultCount, boolean groupedSeats, int[] seats) throws SQLException {
+    // Calcul du coût total de la réservation
+    int amount = childCount * CHILD_PRICE + adultCount * ADULT_PRICE;
+    int[] classes = seatClasses(childCount, adultCount, groupedSeats);
+    try{
+        for(int i = 0; i < seats.length; i++){
+            if(!insertEntry(seats[i], classes[i], customer)){
+                for(int j = 0; j < i; j++)
+                    removeEntry(seats[j], classes[j], customer);
+                reads.invalidate();
+                if(venueSeats != null)
+                    invalidateVenueSeats();
+                return null;
+            }
+        }
+    }catch(SQLException e){
+        if(venueSeats != null)
+            invalidateVenueSeats();
+        throw e;
+    }
+
+    reads.invalidate();
+    if(venueSeats != null)
+        updateVenueSeats(seats, true);
+
+    // Publication de la réservation pour les consommateurs en aval
+    if(feed != null)
+        feed.publish(BookingEvent.Type.BOOKING, customer, seats, classes, amount * 100L);
+
+    // Puis instanciation d'un nouveau BookingInfo retourné
+    BookingInfo booking = new BookingInfo(customer, amount * 100L, System.currentTimeMillis(), seats);
+    return booking;
+  }
+
+  /**
+   * Sets the layout of the venue. Once set, grouped bookings are always made
+   * of adjacent seats of the same row, whatever the allocation strategy, and
+   * bookings can target a section of the venue, see
+   * {@link #book(String, int, int, String)}.
+   *
+   * @param layout the layout of the venue; <code>null</code> to consider the
+   * seats as a single line
+   */
+  public void setVenueLayout(VenueLayout layout) {
+    this.layout = layout;
+    this.venueSeats = layout == null ? null : VenueSeats.forDatabase(url, layout);
+  }
+
+  /**
+   * Returns the per-customer locks used to serialize the bookings and
+   * cancellations of each customer, and their contention metrics.
+   *
+   * @return the per-customer locks
+   */
+  public CustomerLocks getCustomerLocks() {
+    return locks;
+  }
+
+  /**
+   * Sets the strategy used by {@link #book} to pick the booked seats among
+   * the available ones. The default strategy is
+   * {@link SeatAllocationStrategy#FIRST_FIT}.
+   *
+   * @param strategy the seat allocation strategy
+   */
+  public void setAllocationStrategy(SeatAllocationStrategy strategy) {
+    if (strategy == null) {
+      throw new NullPointerException("strategy");
+    }
+    this.allocationStrategy = strategy;
+  }
+
   /**
    * Trouve l'index du premier siège auquel l'inscription consécutive est possible
    *
@@ -271,28 +538,97 @@ public class DataAccess {
    * @param customer the customer who makes the booking
    * @param seat le siege à booker
    * @param cl la classe de la réservation
+   * @return <code>true</code> if the seat was free and is now booked by the
+   * customer, <code>false</code> if it was already booked
    * @throws java.sql.SQLException
    */
-  public void insertEntry(int seat, int cl, String customer) throws SQLException{
-    try{
-        // On prépare le Statement pour insérer la nouvelle réservation
-        String insertSeatQuery = "UPDATE BOOKINGS SET CLASS = ?, CUSTOMER = ? WHERE SEAT = ?;";
-        ps = this.conn.prepareStatement(insertSeatQuery);
+  public boolean insertEntry(int seat, int cl, String customer) throws SQLException{
+    // On prépare le Statement pour insérer la nouvelle réservation; le siège n'est
+    //  réservé que s'il est encore libre, pour ne jamais écraser la réservation d'un autre
+    ps = this.conn.prepareStatement(SQL_BOOK_SEAT);
+
+    // On injecte les valeurs adéquates
+    ps.setInt(1,cl);
+    ps.setString(2,customer);
+    ps.setInt(3,seat);
+    // Puis on exécute la mise à jour
+    boolean inserted = ps.executeUpdate() == 1;
+    // On ferme ensuite le Statement
+    if(ps!=null)
+      ps.close();
+    return inserted;
+  }
 
-        // On injecte les valeurs adéquates
-        ps.setInt(1,cl);
+  /**
+   * Cancels the booking of the specified seat by the specified customer, and
+   * refunds the price of its class on the customer's order.
+   *
+   * @param seat le siège à libérer
+   * @param cl la classe de la réservation
+   * @param customer the customer who booked the seat
+   * @return <code>true</code> if the seat was booked by the customer in that
+   * class and has been released, <code>false</code> otherwise
+   * @throws java.sql.SQLException
+   */
+  public boolean removeEntry(int seat, int cl, String customer) throws SQLException{
+    // On libère le siège s'il est bien réservé par ce client dans cette classe
+    ps = this.conn.prepareStatement(SQL_RELEASE_SEAT);
+    ps.setInt(1,seat);
+    ps.setInt(2,cl);
+    ps.setString(3,customer);
+    boolean removed = ps.executeUpdate() == 1;
+    if(ps!=null)
+      ps.close();
+
+    // Le trigger ne met pas à jour ORDERS quand le client devient null: on rembourse ici
+    if(removed){
+        ps = this.conn.prepareStatement(SQL_DEBIT_ORDER);
+        ps.setInt(1, cl == CHILD ? CHILD_PRICE : ADULT_PRICE);
         ps.setString(2,customer);
-        ps.setInt(3,seat);
-        // Puis on exécute la mise à jour
         ps.executeUpdate();
-        // On ferme ensuite le Statement
         if(ps!=null)
           ps.close();
+        reads.invalidate();
+    }
+    return removed;
+  }
+
 
+  /**
+   * Reads the state of the seats numbered from <code>first</code> (included)
+   * to <code>end</code> (excluded): for the seat <code>first + i</code>, the
+   * customer who booked it (<code>null</code> if it is free) is stored in
+   * <code>customers[i]</code> and its class in <code>classes[i]</code>.
+   * The class of a free seat is 0, and the class of a seat that does not
+   * exist is -1.
+   *
+   * @param first the first seat to read
+   * @param end the seat following the last seat to read
+   * @param customers the array receiving the customers of the seats
+   * @param classes the array receiving the classes of the seats
+   * @return <code>true</code> if the seats were read, <code>false</code>
+   * otherwise
+   * @throws java.sql.SQLException
+   */
+  public boolean getSeats(int first, int end, String[] customers, int[] classes) throws SQLException{
+    try{
+        Arrays.fill(customers, 0, end - first, null);
+        Arrays.fill(classes, 0, end - first, -1);
+        ps = this.conn.prepareStatement(SQL_SELECT_SEAT_RANGE);
+        ps.setInt(1,first);
+        ps.setInt(2,end);
+        rs = ps.executeQuery();
+        while(rs.next()){
+            customers[rs.getInt(1) - first] = rs.getString(2);
+            classes[rs.getInt(1) - first] = rs.getInt(3);
+        }
+        if(rs!=null)    rs.close();
+        if(ps!=null)    ps.close();
+        return true;
     }catch(SQLException e){
-        // Levée d'une exception SQL en cas d'erreur lors de l'exécution de la requête
-        System.out.println("Unable to update field.");
+        System.out.println("Error during statement preparation.");
     }
+    return false;
   }
 
   /**
@@ -311,6 +647,23 @@ public class DataAccess {
    * @throws DataAccessException if an unrecoverable error occurs
    */
   public BookingInfo cancel(String customer, int childCount, int adultCount) throws DataAccessException {
+    // La lecture puis la mise à jour de ORDERS.AMOUNT ne doivent pas être entrelacées
+    //  avec une autre opération du même client
+    BookingInfo booking;
+    locks.lock(customer);
+    try{
+        booking = doCancel(customer, childCount, adultCount);
+    }finally{
+        locks.unlock(customer);
+    }
+    // Les sièges libérés servent d'abord aux demandes en attente; on le fait hors du
+    //  verrou du client, puisqu'il faut prendre celui des clients servis
+    if(booking != null && waitlist != null && waitlist.size() > 0)
+        fulfilWaitlist();
+    return booking;
+  }
+
+  private BookingInfo doCancel(String customer, int childCount, int adultCount) throws DataAccessException {
         try{
 
         // si un des paramètres est faux, on retourne null
@@ -319,8 +672,7 @@ public class DataAccess {
         int amount = 0;
 
         // pour avoir l'amount
-        String getAmount = "SELECT AMOUNT FROM ORDERS WHERE CUSTOMER=?";
-        ps = this.conn.prepareStatement(getAmount);
+        ps = this.conn.prepareStatement(SQL_SELECT_AMOUNT);
         ps.setString(1,customer);
         rs = ps.executeQuery();
 
@@ -339,18 +691,29 @@ public class DataAccess {
             return null;
         }
 
+        // les sièges du client avant l'annulation, pour publier ceux qui auront été libérés
+        //  et les rendre à l'index du plan de salle
+        ArrayList <Integer> seatsBefore = new ArrayList <> ();
+        ArrayList <Integer> classesBefore = new ArrayList <> ();
+        if(feed != null || venueSeats != null){
+            ps = this.conn.prepareStatement(SQL_SELECT_CUSTOMER_CLASSES);
+            ps.setString(1,customer);
+            rs = ps.executeQuery();
+            while(rs.next()){
+                seatsBefore.add(rs.getInt(1));
+                classesBefore.add(rs.getInt(2));
+            }
+            if(rs!=null)    rs.close();
+            if(ps!=null)    ps.close();
+        }
+
         String removeChildSeatsQuery = null;
         if(childCount==-1){
             // si la valeur childcount est -1 alors on annule toutes les réservations des enfants
-        removeChildSeatsQuery = "UPDATE BOOKINGS SET CUSTOMER=null, CLASS=null "
-                + " where CLASS=? AND CUSTOMER=?";
+        removeChildSeatsQuery = SQL_CANCEL_CLASS;
         }else{
             // sinon on annule ChildCount réservations d'enfants
-        removeChildSeatsQuery = "UPDATE BOOKINGS SET CUSTOMER=null, CLASS=null"
-                + " WHERE SEAT IN (SELECT cid FROM "
-                + "(SELECT SEAT as cid FROM BOOKINGS WHERE CLASS=? AND CUSTOMER=?)"
-                + " as C )"
-                + "LIMIT ?";
+        removeChildSeatsQuery = SQL_CANCEL_SEATS;
         }
 
         ps = this.conn.prepareStatement(removeChildSeatsQuery);
@@ -368,15 +731,10 @@ public class DataAccess {
         String removeParentSeatsQuery = null;
         if(adultCount==-1){
             // si adultCount vaut -1 on annule toutes les réservations d'adultes
-        removeParentSeatsQuery = "UPDATE BOOKINGS SET CUSTOMER=null, CLASS=null"
-                + " where CLASS=? AND CUSTOMER=?";
+        removeParentSeatsQuery = SQL_CANCEL_CLASS;
         }else{
             // sinon on annule adultCount réservations d'adultes
-        removeParentSeatsQuery ="UPDATE BOOKINGS SET CUSTOMER=null, CLASS=null"
-                + " WHERE SEAT IN (SELECT cid FROM "
-                + "(SELECT SEAT as cid FROM BOOKINGS WHERE CLASS=? AND CUSTOMER=?)"
-                + " as C )"
-                + "LIMIT ?";
+        removeParentSeatsQuery = SQL_CANCEL_SEATS;
 ;
         }
         ps = this.conn.prepareStatement(removeParentSeatsQuery);
@@ -391,8 +749,7 @@ public class DataAccess {
         if(ps!=null)    ps.close();
 
         // on update l'amount (amount-refund)
-        String updateOrdersQuery = "UPDATE ORDERS SET AMOUNT=AMOUNT-? WHERE CUSTOMER=?";
-        ps = this.conn.prepareStatement(updateOrdersQuery);
+        ps = this.conn.prepareStatement(SQL_DEBIT_ORDER);
         // on set le refund et  le customer remboursé
         ps.setInt(1,refund);
         ps.setString(2,customer);
@@ -402,31 +759,23 @@ public class DataAccess {
         // on ferme le preparedStatement
         if(ps!=null)    ps.close();
 
-
-        // la date du bookinginfo renvoyé (today car modifié)
-        Date today = new java.util.Date();
+        // les lectures en cache ne reflètent plus l'état de la base
+        reads.invalidate();
 
         // le total du bookinginfo renvoyé
         int total = amount - refund;
 
         // la table des Seats mis à jour
-        ArrayList <Integer> seatsList = new ArrayList <> ();
-        String getTable = "SELECT SEAT FROM BOOKINGS WHERE CUSTOMER=?";
-        ps = this.conn.prepareStatement(getTable);
-        ps.setString(1,customer);
-        rs = ps.executeQuery();
+        int[] seatsAfter = loadCustomerSeats(customer);
 
-        // on récupère les seats et on les ajoute
-        while(rs.next()){
-            seatsList.add(rs.getInt(1));
-        }
+        // Publication des sièges libérés pour les consommateurs en aval
+        if(feed != null)
+            publishCancellation(customer, seatsBefore, classesBefore, seatsAfter);
+        if(venueSeats != null)
+            updateVenueSeats(freedSeats(seatsBefore, seatsAfter), false);
 
-        // on ferme le resultSet et le preparedStatement
-        if(rs!=null) rs.close();
-        if(ps!=null)    ps.close();
-
-        // on renvoi le bookinginfo associé à la modification.
-        BookingInfo booking = new BookingInfo(customer,total,today,seatsList);
+        // on renvoi le bookinginfo associé à la modification (daté de maintenant car modifié).
+        BookingInfo booking = new BookingInfo(customer, total * 100L, System.currentTimeMillis(), seatsAfter);
         return booking;
 
     }catch(SQLException e){
@@ -435,6 +784,167 @@ public class DataAccess {
       return null;
   }
 
+  /**
+   * Lit les sièges du client, triés pour qu'un groupe de sièges forme une seule
+   * série dans le BookingInfo
+   */
+  private int[] loadCustomerSeats(String customer) throws SQLException {
+    int[] seats = new int[16];
+    int n = 0;
+    ps = this.conn.prepareStatement(SQL_SELECT_CUSTOMER_SEATS);
+    ps.setString(1,customer);
+    rs = ps.executeQuery();
+    while(rs.next()){
+        if(n == seats.length)
+            seats = Arrays.copyOf(seats, 2 * n);
+        seats[n++] = rs.getInt(1);
+    }
+    if(rs!=null)    rs.close();
+    if(ps!=null)    ps.close();
+    seats = Arrays.copyOf(seats, n);
+    Arrays.sort(seats);
+    return seats;
+  }
+
+  /**
+   * Retourne les sièges du client présents avant l'annulation mais plus après
+   */
+  private static int[] freedSeats(ArrayList<Integer> seatsBefore, int[] seatsAfter) {
+    int[] seats = new int[seatsBefore.size()];
+    int n = 0;
+    for(int i = 0; i < seatsBefore.size(); i++)
+        if(Arrays.binarySearch(seatsAfter, seatsBefore.get(i)) < 0)
+            seats[n++] = seatsBefore.get(i);
+    return Arrays.copyOf(seats, n);
+  }
+
+  /**
+   * Reporte dans l'index du plan de salle, s'il est chargé, les sièges réservés
+   *  (taken) ou libérés; les sièges hors du plan sont ignorés
+   */
+  private void updateVenueSeats(int[] seats, boolean taken) {
+    synchronized(venueSeats){
+        if(!venueSeats.isLoaded())
+            return;
+        for(int seat : seats){
+            if(venueSeats.getLayout().blockOf(seat) == -1)
+                continue;
+            if(taken)
+                venueSeats.take(seat);
+            else
+                venueSeats.release(seat);
+        }
+    }
+  }
+
+  /**
+   * L'index du plan de salle ne reflète plus la base: il sera relu avant usage
+   */
+  private void invalidateVenueSeats() {
+    synchronized(venueSeats){
+        venueSeats.invalidate();
+    }
+  }
+
+  /**
+   * Publie sur le flux les sièges du client présents avant l'annulation mais plus après
+   */
+  private void publishCancellation(String customer, ArrayList<Integer> seatsBefore, ArrayList<Integer> classesBefore, int[] seatsAfter) {
+    int[] seats = new int[seatsBefore.size()];
+    int[] classes = new int[seatsBefore.size()];
+    int n = 0;
+    int refund = 0;
+    for(int i = 0; i < seatsBefore.size(); i++){
+        if(Arrays.binarySearch(seatsAfter, seatsBefore.get(i)) < 0){
+            seats[n] = seatsBefore.get(i);
+            classes[n] = classesBefore.get(i);
+            refund += classes[n] == CHILD ? CHILD_PRICE : ADULT_PRICE;
+            n++;
+        }
+    }
+    if(n > 0)
+        feed.publish(BookingEvent.Type.CANCELLATION, customer, Arrays.copyOf(seats, n), Arrays.copyOf(classes, n), -refund * 100L);
+  }
+
+  /**
+   * Books the waiting requests that fit in the free seats, in priority
+   * order, and notifies their listeners.
+   */
+  private void fulfilWaitlist() throws DataAccessException {
+    List<Waitlist.Match> booked = new ArrayList<>();
+    List<BookingInfo> bookings = new ArrayList<>();
+    // Une seule mise en correspondance à la fois, pour ne pas attribuer deux fois les mêmes sièges
+    synchronized(waitlist){
+        try{
+            ArrayList <Integer> seatsTable = getAvailableSeats(true);
+            if(seatsTable == null)
+                return;
+
+            // Mise en correspondance en mémoire, puis écriture des réservations obtenues
+            SeatMap map = layout == null ? SeatMap.of(seatsTable) : layout.seatMap(seatsTable);
+            List<Waitlist.Match> matches = waitlist.match(map, allocationStrategy);
+            for(int i = 0; i < matches.size(); i++){
+                Waitlist.Match match = matches.get(i);
+                Waitlist.Request request = match.request;
+                locks.lock(request.getCustomer());
+                try{
+                    BookingInfo booking = insertBooking(request.getCustomer(), request.getChildCount(), request.getAdultCount(), request.isGroupedSeats(), match.seats);
+                    if(booking != null){
+                        bookings.add(booking);
+                        booked.add(match);
+                    }else{
+                        // sièges réservés entre-temps par un autre client: la demande attendra
+                        waitlist.restore(request);
+                    }
+                }catch(SQLException e){
+                    // Les demandes non écrites retournent dans la liste d'attente
+                    System.out.println("SQL error, unable to book waiting requests.");
+                    for(int j = i; j < matches.size(); j++)
+                        waitlist.restore(matches.get(j).request);
+                    break;
+                }finally{
+                    locks.unlock(request.getCustomer());
+                }
+            }
+        }catch(SQLException e){
+            System.out.println("Error during statement preparation.");
+        }
+    }
+
+    // Notification des clients servis, hors de tout verrou
+    for(int i = 0; i < booked.size(); i++){
+        Waitlist.Request request = booked.get(i).request;
+        if(request.getListener() != null)
+            request.getListener().booked(request, bookings.get(i));
+    }
+  }
+
+  /**
+   * Sets the waitlist in which the requests that cannot be satisfied are put,
+   * see {@link #book(String, int, int, boolean, int, WaitlistListener)}. Each
+   * cancellation then books the waiting requests that fit in the freed seats.
+   * The same waitlist should be shared by all the <code>DataAccess</code>
+   * objects connected to the same database.
+   *
+   * @param waitlist the waitlist; <code>null</code> for no waitlist
+   */
+  public void setWaitlist(Waitlist waitlist) {
+    this.waitlist = waitlist;
+  }
+
+  /**
+   * Sets the feed on which the bookings and cancellations performed through
+   * this object are published. The same feed may be shared by several
+   * <code>DataAccess</code> objects: events are then ordered across all of
+   * them, and the events of a given customer are published in the order the
+   * operations were performed.
+   *
+   * @param feed the feed; <code>null</code> to publish no events
+   */
+  public void setBookingFeed(BookingFeed feed) {
+    this.feed = feed;
+  }
+
   /**
    * Closes the underlying connection and releases all related ressources. The
    * application must call this method when it is done accessing the data store.
@@ -466,14 +976,59 @@ public class DataAccess {
   /**
    * Returns the number of all the available (free) seats. The returned
    * information is consistent with the latest booking/cancellation performed.
+   * <p>
+   * Concurrent calls made by the <code>DataAccess</code> objects connected to
+   * the same database share a single query, and may be served from the
+   * micro-cache set with {@link #setReadCacheTtl(long)}.
    *
    * @return the number of each of the available seats
    * @throws DataAccessException if an unrecoverable error occurs
    * @throws java.sql.SQLException
    */
   public ArrayList<Integer> getAvailableSeats() throws DataAccessException, SQLException {
+    return getAvailableSeats(false);
+  }
+
+  /**
+   * Returns the number of all the available (free) seats. In strict mode, the
+   * seats are read from the database, bypassing both the shared reads and the
+   * micro-cache; this is the mode used to take booking decisions.
+   *
+   * @param strict <code>true</code> to read the seats from the database, and
+   * <code>false</code> to allow shared or cached reads
+   * @return the number of each of the available seats
+   * @throws DataAccessException if an unrecoverable error occurs
+   * @throws java.sql.SQLException
+   */
+  public ArrayList<Integer> getAvailableSeats(boolean strict) throws DataAccessException, SQLException {
+    if(strict)
+        return loadAvailableSeats();
+
+    ArrayList <Integer> seatsList = reads.get("seats", new ReadCoalescer.Query<ArrayList<Integer>>() {
+        @Override
+        public ArrayList<Integer> execute() throws DataAccessException, SQLException {
+            return loadAvailableSeats();
+        }
+    });
+    // La liste est partagée entre les lecteurs: chacun reçoit sa copie
+    return seatsList == null ? null : new ArrayList <> (seatsList);
+  }
+
+  /**
+   * Sets how long the results of {@link #getAvailableSeats()} and
+   * {@link #getBookingInfo(String)} may be reused by later calls, for all the
+   * <code>DataAccess</code> objects connected to the same database.
+   *
+   * @param millis the time to live of the results, in milliseconds; 0 (the
+   * default) only shares the results between concurrent calls
+   */
+  public void setReadCacheTtl(long millis) {
+    reads.setTtlMillis(millis);
+  }
 
-    String getReservedSeatsQuery = "SELECT SEAT FROM BOOKINGS WHERE CUSTOMER IS NULL;";
+  private ArrayList<Integer> loadAvailableSeats() throws DataAccessException, SQLException {
+
+    String getReservedSeatsQuery = SQL_SELECT_FREE_SEATS;
     ArrayList <Integer> seatsList = new ArrayList <> ();
 
     try{
@@ -488,7 +1043,9 @@ public class DataAccess {
         ps.close();
 
     }catch(SQLException e){
+        // l'erreur remonte, pour que les lectures partagées ne gardent pas un résultat vide
         System.out.println("Error during statement preparation.");
+        throw e;
     }
 
     if(seatsList.size()>0)
@@ -510,12 +1067,24 @@ public class DataAccess {
    * any; the booking information aggregated over all customer if no customer is
    * specified.
    * @throws DataAccessException if an unrecoverable error occurs
+   * @throws java.sql.SQLException if the booking info cannot be read
    */
 
-  public BookingInfo getBookingInfo(String customer) throws DataAccessException, SQLException {
+  public BookingInfo getBookingInfo(final String customer) throws DataAccessException, SQLException {
+      // Les lectures concurrentes pour un même client partagent la même requête
+      String key = customer == null ? "info" : "info:" + customer;
+      return reads.get(key, new ReadCoalescer.Query<BookingInfo>() {
+          @Override
+          public BookingInfo execute() throws DataAccessException, SQLException {
+              return loadBookingInfo(customer);
+          }
+      });
+  }
+
+  private BookingInfo loadBookingInfo(String customer) throws DataAccessException, SQLException {
       String client = null;
       int amount = 0;
-      Date date_order = null;
+      long date_order = BookingInfo.NO_DATE;
 
 
       try {
@@ -524,11 +1093,11 @@ public class DataAccess {
 
         if(customer==null){
             // si aucun customer n'a été donné on sélectionne la commande la plus récente de l'overall des customers
-           getBookingQuery = "SELECT * FROM ORDERS ORDER BY ORDERS.ODATE DESC LIMIT 1";
+           getBookingQuery = SQL_SELECT_LATEST_ORDER;
            ps = this.conn.prepareStatement(getBookingQuery);
         }else{
             // si un customer est renseigné on choisit sa dernière commande
-           getBookingQuery = "SELECT * FROM ORDERS WHERE CUSTOMER=? ORDER BY ORDERS.ODATE DESC LIMIT 1";
+           getBookingQuery = SQL_SELECT_CUSTOMER_ORDER;
            ps = this.conn.prepareStatement(getBookingQuery);
            ps.setString(1,customer);
         }
@@ -539,7 +1108,8 @@ public class DataAccess {
         while(rs.next()){
             client = rs.getString(1);
             amount = rs.getInt(2);
-            date_order = rs.getDate(3);
+            Timestamp odate = rs.getTimestamp(3);
+            date_order = odate == null ? BookingInfo.NO_DATE : odate.getTime();
         }
 
         // on ferme les preparedStatement et ResultSet
@@ -550,27 +1120,17 @@ public class DataAccess {
 
 
         // table des seats
-        ArrayList <Integer> seatsList = new ArrayList <> ();
-        String getTable = "SELECT SEAT FROM BOOKINGS WHERE CUSTOMER=?";
-        ps = this.conn.prepareStatement(getTable);
-        ps.setString(1,client);
-        rs = ps.executeQuery();
-
-        while(rs.next()){
-            seatsList.add(rs.getInt(1));
-        }
-        // on ferme les preparedStatements et les ResultSet
-        if(rs!=null)    rs.close();
-        if(ps!=null)    ps.close();
+        int[] seatsList = loadCustomerSeats(client);
 
         // l'objet booking info retourné
-        BookingInfo booking = new BookingInfo(client,amount,date_order,seatsList);
+        BookingInfo booking = new BookingInfo(client, amount * 100L, date_order, seatsList);
         return booking;
 
       }
       catch(SQLException e){
+        // comme pour les sièges libres, l'erreur n'est pas partagée comme un résultat
         System.out.println("Error during statement preparation.");
+        throw e;
     }
-      return null;
   }
 }
@@ -0,0 +1,213 @@
+package model;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A subscriber that writes the events of a {@link BookingFeed} to files, one
+ * JSON object per line (NDJSON), so that downstream consumers can tail them
+ * without touching the database. The events are split into segments of
+ * bounded size, named after the sequence number of their first event
+ * (<code>bookings-00000000000000000042.ndjson</code>); a segment is flushed
+ * at the end of each batch of events.
+ * <p>
+ * Segments are appended to, never truncated, except for an incomplete last
+ * line left by a crash, which is removed when a subscriber is created on the
+ * directory. A feed restarted on the same directory should continue the
+ * sequence of the events already written, see {@link #nextSequence(File)}.
+ * <p>
+ * Each line looks like:
+ * <pre>
+ * {"seq":42,"type":"BOOKING","customer":"bob","seats":[7,8],"classes":[1,2],"amountCents":7500,"ts":1760000000000}
+ * </pre>
+ */
+public class NdjsonFileSubscriber implements BookingSubscriber {
+
+  //
+  // CONSTANTS
+  //
+  private static final String PREFIX = "bookings-";
+  private static final String SUFFIX = ".ndjson";
+  private static final String SEQUENCE = "{\"seq\":";
+
+  //
+  // FIELDS
+  //
+  private final File directory;
+  private final long segmentSize;
+  private final StringBuilder line = new StringBuilder(256);
+  private Writer out = null;
+  private long written = 0;
+
+  //
+  // CONSTRUCTORS
+  //
+  /**
+   * Creates a new subscriber writing to the specified directory. If the last
+   * segment of the directory ends with an incomplete line, the line is
+   * removed, so that the next event starts on a line of its own.
+   *
+   * @param directory the directory of the segments; it is created if needed
+   * @param segmentSize the size above which a new segment is started, in
+   * characters
+   * @throws IOException if the directory cannot be created, or its last
+   * segment cannot be repaired
+   */
+  public NdjsonFileSubscriber(File directory, long segmentSize) throws IOException {
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("unable to create " + directory);
+    }
+    this.directory = directory;
+    this.segmentSize = segmentSize;
+    File last = lastSegment(directory);
+    if (last != null) {
+      truncateToLastLine(last);
+    }
+  }
+
+  //
+  // CLASS METHODS
+  //
+  /**
+   * Returns the sequence number following the last event written to the
+   * specified directory, to create a feed continuing the sequence, see
+   * {@link BookingFeed#BookingFeed(int, long)}. An incomplete last line, as
+   * left by a crash, is ignored.
+   *
+   * @param directory the directory of the segments
+   * @return the next sequence number, 0 if no event was written
+   * @throws IOException if the last segment cannot be read
+   */
+  public static long nextSequence(File directory) throws IOException {
+    File last = lastSegment(directory);
+    if (last == null) {
+      return 0;
+    }
+    String name = last.getName();
+    long next = Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    try (BufferedReader in = new BufferedReader(new InputStreamReader(
+            new FileInputStream(last), StandardCharsets.UTF_8))) {
+      for (String line = in.readLine(); line != null; line = in.readLine()) {
+        if (line.startsWith(SEQUENCE) && line.endsWith("}")) {
+          int end = line.indexOf(',', SEQUENCE.length());
+          next = Long.parseLong(line.substring(SEQUENCE.length(), end)) + 1;
+        }
+      }
+    }
+    return next;
+  }
+
+  // Retourne le dernier segment du répertoire, null s'il n'y en a pas
+  private static File lastSegment(File directory) {
+    String[] names = directory.list();
+    String last = null;
+    if (names != null) {
+      for (String name : names) {
+        if (name.startsWith(PREFIX) && name.endsWith(SUFFIX) && (last == null || name.compareTo(last) > 0)) {
+          last = name;
+        }
+      }
+    }
+    return last == null ? null : new File(directory, last);
+  }
+
+  // Coupe le segment après son dernier saut de ligne: une ligne incomplète n'est pas un événement
+  private static void truncateToLastLine(File segment) throws IOException {
+    try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+      long length = file.length();
+      while (length > 0) {
+        file.seek(length - 1);
+        if (file.read() == '\n') {
+          break;
+        }
+        length--;
+      }
+      if (length < file.length()) {
+        file.setLength(length);
+      }
+    }
+  }
+
+  //
+  // METHODS
+  //
+  @Override
+  public void onEvent(BookingEvent event, boolean endOfBatch) throws IOException {
+    if (out == null || written >= segmentSize) {
+      roll(event.getSequence());
+    }
+    line.setLength(0);
+    line.append(SEQUENCE).append(event.getSequence());
+    line.append(",\"type\":\"").append(event.getType()).append('"');
+    line.append(",\"customer\":");
+    quote(event.getCustomer());
+    line.append(",\"seats\":[");
+    for (int i = 0; i < event.getSeatCount(); i++) {
+      line.append(i == 0 ? "" : ",").append(event.getSeat(i));
+    }
+    line.append("],\"classes\":[");
+    for (int i = 0; i < event.getSeatCount(); i++) {
+      line.append(i == 0 ? "" : ",").append(event.getSeatClass(i));
+    }
+    line.append("],\"amountCents\":").append(event.getAmountDeltaCents());
+    line.append(",\"ts\":").append(event.getTimestamp());
+    line.append("}\n");
+    out.append(line);
+    written += line.length();
+    if (endOfBatch) {
+      out.flush();
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (out != null) {
+      out.close();
+      out = null;
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "NdjsonFileSubscriber{" + "directory=" + directory + '}';
+  }
+
+  // Ouvre le segment commençant à l'événement spécifié, en ajout: un segment existant
+  //  (après un redémarrage) n'est pas écrasé
+  private void roll(long sequence) throws IOException {
+    close();
+    File segment = new File(directory, String.format(PREFIX + "%020d" + SUFFIX, sequence));
+    written = segment.length();
+    out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(segment, true), StandardCharsets.UTF_8));
+  }
+
+  // Ajoute la chaîne à la ligne, au format JSON
+  private void quote(String s) {
+    if (s == null) {
+      line.append("null");
+      return;
+    }
+    line.append('"');
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      if (c == '"' || c == '\\') {
+        line.append('\\').append(c);
+      } else if (c < 0x20) {
+        line.append(String.format("\\u%04x", (int) c));
+      } else {
+        line.append(c);
+      }
+    }
+    line.append('"');
+  }
+
+}
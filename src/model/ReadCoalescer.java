@@ -0,0 +1,200 @@
+package model;
+
+import java.sql.SQLException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Coalesces identical concurrent reads: while a read for a given key is in
+ * flight, every other caller asking for the same key waits for it and shares
+ * its result instead of running its own query ("single-flight").
+ * <p>
+ * Optionally, a completed result can be kept for a very short time (a
+ * micro-TTL, e.g. 50 ms) so that bursts of reads arriving right after the
+ * query returned are served without going back to the database. A TTL of 0
+ * (the default) disables this cache: results are then only shared between
+ * callers whose reads actually overlap.
+ * <p>
+ * A coalescer is shared by all the {@link DataAccess} objects connected to the
+ * same database, see {@link #forDatabase(String)}.
+ */
+public class ReadCoalescer {
+
+  //
+  // HELPER CLASSES
+  //
+  /**
+   * A read to be coalesced.
+   *
+   * @param <V> the type of the value read
+   */
+  public interface Query<V> {
+
+    /**
+     * Executes the read.
+     *
+     * @return the value read
+     * @throws DataAccessException if an unrecoverable error occurs
+     * @throws SQLException if the underlying query fails
+     */
+    V execute() throws DataAccessException, SQLException;
+  }
+
+  /**
+   * A read in flight, or completed and possibly still cached.
+   */
+  private static final class Flight {
+
+    private final CountDownLatch done = new CountDownLatch(1);
+    private volatile Object value;
+    private volatile Exception error;
+    private volatile long completedAt;
+  }
+
+  //
+  // CLASS FIELDS
+  //
+  private static final ConcurrentHashMap<String, ReadCoalescer> COALESCERS = new ConcurrentHashMap<>();
+
+  //
+  // FIELDS
+  //
+  private final ConcurrentHashMap<String, Flight> flights = new ConcurrentHashMap<>();
+  private volatile long ttlNanos = 0;
+
+  //
+  // CLASS METHODS
+  //
+  /**
+   * Returns the coalescer shared by all the readers of the specified database.
+   *
+   * @param url the url of the database
+   * @return the coalescer of the database
+   */
+  public static ReadCoalescer forDatabase(String url) {
+    ReadCoalescer coalescer = COALESCERS.get(url);
+    if (coalescer == null) {
+      ReadCoalescer created = new ReadCoalescer();
+      coalescer = COALESCERS.putIfAbsent(url, created);
+      if (coalescer == null) {
+        coalescer = created;
+      }
+    }
+    return coalescer;
+  }
+
+  //
+  // METHODS
+  //
+  /**
+   * Sets how long a completed result may be reused by later reads.
+   *
+   * @param millis the time to live of results, in milliseconds; 0 disables
+   * the cache
+   */
+  public void setTtlMillis(long millis) {
+    if (millis < 0) {
+      throw new IllegalArgumentException("negative ttl: " + millis);
+    }
+    ttlNanos = millis * 1000000L;
+  }
+
+  /**
+   * Returns how long a completed result may be reused by later reads.
+   *
+   * @return the time to live of results, in milliseconds
+   */
+  public long getTtlMillis() {
+    return ttlNanos / 1000000L;
+  }
+
+  /**
+   * Returns the value of the specified key, either by joining the read in
+   * flight for that key, by reusing a cached result that is still fresh, or
+   * by executing the specified query. If the query fails, all the callers
+   * that joined it get the same exception.
+   *
+   * @param <V> the type of the value read
+   * @param key the key identifying the read
+   * @param query the query to execute if no read can be shared
+   * @return the value read
+   * @throws DataAccessException if an unrecoverable error occurs
+   * @throws SQLException if the underlying query fails
+   */
+  @SuppressWarnings("unchecked")
+  public <V> V get(String key, Query<V> query) throws DataAccessException, SQLException {
+    while (true) {
+      Flight flight = flights.get(key);
+      if (flight != null) {
+        if (flight.done.getCount() > 0) {
+          // une lecture est en cours: on attend son résultat
+          return (V) await(flight);
+        }
+        if (System.nanoTime() - flight.completedAt < ttlNanos) {
+          // résultat encore frais
+          return (V) result(flight);
+        }
+        // résultat périmé: on le retire et on recommence
+        flights.remove(key, flight);
+        continue;
+      }
+      Flight created = new Flight();
+      if (flights.putIfAbsent(key, created) != null) {
+        // un autre lecteur nous a devancés: on le rejoint
+        continue;
+      }
+      return (V) run(key, created, query);
+    }
+  }
+
+  /**
+   * Forgets every result, so that the next reads go to the database. Reads
+   * already in flight complete normally for the callers that joined them, but
+   * are no longer shared with later callers since they may predate the
+   * change that caused the invalidation.
+   */
+  public void invalidate() {
+    flights.clear();
+  }
+
+  private Object run(String key, Flight flight, Query<?> query) throws DataAccessException, SQLException {
+    try {
+      flight.value = query.execute();
+    } catch (DataAccessException | SQLException | RuntimeException e) {
+      flight.error = e;
+    } finally {
+      flight.completedAt = System.nanoTime();
+      flight.done.countDown();
+      // sans cache, le résultat ne sert qu'aux lecteurs déjà en attente
+      if (ttlNanos == 0 || flight.error != null) {
+        flights.remove(key, flight);
+      }
+    }
+    return result(flight);
+  }
+
+  private Object await(Flight flight) throws DataAccessException, SQLException {
+    try {
+      flight.done.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new DataAccessException(e);
+    }
+    return result(flight);
+  }
+
+  private Object result(Flight flight) throws DataAccessException, SQLException {
+    Exception error = flight.error;
+    if (error == null) {
+      return flight.value;
+    }
+    if (error instanceof SQLException) {
+      throw (SQLException) error;
+    }
+    if (error instanceof DataAccessException) {
+      throw (DataAccessException) error;
+    }
+    throw (RuntimeException) error;
+  }
+
+}
@@ -0,0 +1,105 @@
+package model;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Creates and populates the tables used by {@link DataAccess}:
+ * <ul>
+ * <li><code>PRICES(CLASS, PRICE)</code>: the price of each class;</li>
+ * <li><code>BOOKINGS(SEAT, CLASS, CUSTOMER)</code>: one row per seat of the
+ * venue, with a <code>null</code> customer if the seat is free;</li>
+ * <li><code>ORDERS(CUSTOMER, AMOUNT, ODATE)</code>: one row per customer,
+ * with the total amount and the date of the customer's last order.</li>
+ * </ul>
+ * Every lookup made by <code>DataAccess</code> is backed by an index, so that
+ * none of them scans a whole table: free seats and seats of a customer
+ * (<code>CUSTOMER IS NULL</code>, <code>CUSTOMER = ?</code>, with or without
+ * a class) are read from the covering index <code>(CUSTOMER, CLASS,
+ * SEAT)</code>; the orders of a customer from the primary key; and the latest
+ * order from the index <code>(ODATE DESC, CUSTOMER)</code>.
+ * <p>
+ * The statements only use standard SQL, so that the schema can also be
+ * created in an embedded database (e.g. H2) for testing.
+ */
+public class Schema {
+
+  //
+  // CONSTANTS
+  //
+  private static final String[] DROP = {
+    "DROP TABLE IF EXISTS BOOKINGS",
+    "DROP TABLE IF EXISTS ORDERS",
+    "DROP TABLE IF EXISTS PRICES"
+  };
+
+  private static final String[] CREATE = {
+    "CREATE TABLE PRICES (CLASS INT NOT NULL PRIMARY KEY, PRICE INT NOT NULL)",
+    "CREATE TABLE BOOKINGS (SEAT INT NOT NULL PRIMARY KEY, CLASS INT, CUSTOMER VARCHAR(64))",
+    "CREATE TABLE ORDERS (CUSTOMER VARCHAR(64) NOT NULL PRIMARY KEY, AMOUNT INT NOT NULL, ODATE TIMESTAMP NOT NULL)",
+    "CREATE INDEX BOOKINGS_CUSTOMER ON BOOKINGS (CUSTOMER, CLASS, SEAT)",
+    "CREATE INDEX ORDERS_ODATE ON ORDERS (ODATE DESC, CUSTOMER)"
+  };
+
+  private static final int BATCH_SIZE = 1000;
+
+  //
+  // CONSTRUCTORS
+  //
+  private Schema() {
+  }
+
+  //
+  // CLASS METHODS
+  //
+  /**
+   * Creates the tables and their indexes, dropping any previous version of
+   * them (and therefore the triggers defined on them).
+   *
+   * @param conn the connection to the database
+   * @throws SQLException if the tables cannot be created
+   */
+  public static void create(Connection conn) throws SQLException {
+    try (Statement st = conn.createStatement()) {
+      for (String ddl : DROP) {
+        st.executeUpdate(ddl);
+      }
+      for (String ddl : CREATE) {
+        st.executeUpdate(ddl);
+      }
+    }
+  }
+
+  /**
+   * Populates the tables for a venue of the specified size: the prices of
+   * the two classes, and the specified number of free seats, numbered from 1.
+   *
+   * @param conn the connection to the database
+   * @param seats the number of seats of the venue
+   * @param childPrice the price of a child seat
+   * @param adultPrice the price of an adult seat
+   * @throws SQLException if the tables cannot be populated
+   */
+  public static void populate(Connection conn, int seats, int childPrice, int adultPrice) throws SQLException {
+    try (PreparedStatement ps = conn.prepareStatement("INSERT INTO PRICES (CLASS, PRICE) VALUES (?, ?)")) {
+      ps.setInt(1, DataAccess.CHILD);
+      ps.setInt(2, childPrice);
+      ps.executeUpdate();
+      ps.setInt(1, DataAccess.ADULT);
+      ps.setInt(2, adultPrice);
+      ps.executeUpdate();
+    }
+    try (PreparedStatement ps = conn.prepareStatement("INSERT INTO BOOKINGS (SEAT, CLASS, CUSTOMER) VALUES (?, NULL, NULL)")) {
+      for (int seat = 1; seat <= seats; seat++) {
+        ps.setInt(1, seat);
+        ps.addBatch();
+        if (seat % BATCH_SIZE == 0 || seat == seats) {
+          ps.executeBatch();
+        }
+      }
+    }
+  }
+
+}
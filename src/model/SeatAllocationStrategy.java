@@ -0,0 +1,220 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * Defines how {@link DataAccess#book} picks the seats of a booking among the
+ * free seats of a {@link SeatMap}.
+ * <p>
+ * For grouped bookings, each strategy picks the run (the sequence of
+ * consecutive free seats) the seats are taken from, and always takes them from
+ * the beginning of the run so that no new hole is created. For ungrouped
+ * bookings, it picks the order in which the runs are consumed.
+ */
+public enum SeatAllocationStrategy {
+
+  /**
+   * Takes the lowest-numbered seats, or the first run large enough for a
+   * grouped booking. This is the historical behaviour of
+   * {@link DataAccess#book}.
+   */
+  FIRST_FIT {
+    @Override
+    int pickRun(SeatMap seats, int count) {
+      for (int seat = seats.nextFree(seats.getFirst()); seat < seats.getEnd(); ) {
+        int end = seats.runEnd(seat);
+        if (end - seat >= count) {
+          return seat;
+        }
+        seat = seats.nextFree(end);
+      }
+      return -1;
+    }
+
+    @Override
+    int[] orderRuns(int[] runs) {
+      return runs;
+    }
+  },
+
+  /**
+   * Takes the seats from the smallest runs that can hold them, so that large
+   * runs are kept for large groups.
+   */
+  BEST_FIT {
+    @Override
+    int pickRun(SeatMap seats, int count) {
+      int best = -1;
+      int bestLength = Integer.MAX_VALUE;
+      for (int seat = seats.nextFree(seats.getFirst()); seat < seats.getEnd(); ) {
+        int end = seats.runEnd(seat);
+        int length = end - seat;
+        if (length >= count && length < bestLength) {
+          if (length == count) {
+            return seat;
+          }
+          best = seat;
+          bestLength = length;
+        }
+        seat = seats.nextFree(end);
+      }
+      return best;
+    }
+
+    @Override
+    int[] orderRuns(int[] runs) {
+      return sortRuns(runs, true);
+    }
+  },
+
+  /**
+   * Takes the seats from the largest runs, so that the remaining part of the
+   * run stays as large as possible.
+   */
+  WORST_FIT {
+    @Override
+    int pickRun(SeatMap seats, int count) {
+      int worst = -1;
+      int worstLength = count - 1;
+      for (int seat = seats.nextFree(seats.getFirst()); seat < seats.getEnd(); ) {
+        int end = seats.runEnd(seat);
+        if (end - seat > worstLength) {
+          worst = seat;
+          worstLength = end - seat;
+        }
+        seat = seats.nextFree(end);
+      }
+      return worst;
+    }
+
+    @Override
+    int[] orderRuns(int[] runs) {
+      return sortRuns(runs, false);
+    }
+  },
+
+  /**
+   * Minimizes the fragmentation of the venue: a grouped booking goes to a run
+   * it fills exactly, or else to the smallest run whose remaining part can
+   * still hold a group of the same size, or else to the smallest run that can
+   * hold it. An ungrouped booking is kept in a single run when possible, and
+   * otherwise fills the smallest runs (the holes) first.
+   */
+  MIN_FRAGMENTATION {
+    @Override
+    int pickRun(SeatMap seats, int count) {
+      int reusable = -1;
+      int reusableLength = Integer.MAX_VALUE;
+      int fallback = -1;
+      int fallbackLength = Integer.MAX_VALUE;
+      for (int seat = seats.nextFree(seats.getFirst()); seat < seats.getEnd(); ) {
+        int end = seats.runEnd(seat);
+        int length = end - seat;
+        if (length == count) {
+          return seat;
+        }
+        if (length >= 2 * count && length < reusableLength) {
+          reusable = seat;
+          reusableLength = length;
+        } else if (length > count && length < fallbackLength) {
+          fallback = seat;
+          fallbackLength = length;
+        }
+        seat = seats.nextFree(end);
+      }
+      return reusable != -1 ? reusable : fallback;
+    }
+
+    @Override
+    int[] orderRuns(int[] runs) {
+      return sortRuns(runs, true);
+    }
+
+    @Override
+    public int[] allocate(SeatMap seats, int count, boolean groupedSeats) {
+      int[] allocated = super.allocate(seats, count, true);
+      if (allocated != null || groupedSeats) {
+        return allocated;
+      }
+      return super.allocate(seats, count, false);
+    }
+  };
+
+  //
+  // METHODS
+  //
+  /**
+   * Allocates the specified number of seats in the specified map. The
+   * allocated seats are marked as taken in the map.
+   *
+   * @param seats the map of the free seats
+   * @param count the number of seats to allocate
+   * @param groupedSeats <code>true</code> if the seats must bear consecutive
+   * numbers, and <code>false</code> otherwise
+   * @return the allocated seats, or <code>null</code> if the request cannot be
+   * satisfied
+   */
+  public int[] allocate(SeatMap seats, int count, boolean groupedSeats) {
+    if (count <= 0 || count > seats.getFreeCount()) {
+      return count == 0 ? new int[0] : null;
+    }
+    int[] allocated = new int[count];
+    if (groupedSeats) {
+      int start = pickRun(seats, count);
+      if (start == -1) {
+        return null;
+      }
+      for (int i = 0; i < count; i++) {
+        allocated[i] = start + i;
+      }
+    } else {
+      int[] runs = orderRuns(seats.runs());
+      int n = 0;
+      for (int r = 0; r < runs.length && n < count; r += 2) {
+        for (int seat = runs[r]; seat < runs[r] + runs[r + 1] && n < count; seat++) {
+          allocated[n++] = seat;
+        }
+      }
+    }
+    for (int seat : allocated) {
+      seats.take(seat);
+    }
+    return allocated;
+  }
+
+  /**
+   * Returns the first seat of the run a grouped booking must be taken from.
+   *
+   * @param seats the map of the free seats
+   * @param count the number of seats of the booking
+   * @return the first seat of the run, or -1 if no run is large enough
+   */
+  abstract int pickRun(SeatMap seats, int count);
+
+  /**
+   * Orders the specified runs in the order an ungrouped booking must consume
+   * them.
+   *
+   * @param runs the runs, as pairs (start, length) sorted by seat number
+   * @return the ordered runs, in the same format
+   */
+  abstract int[] orderRuns(int[] runs);
+
+  // Trie les runs par longueur (puis par numéro de siège), sans objets intermédiaires
+  private static int[] sortRuns(int[] runs, boolean ascending) {
+    long[] keys = new long[runs.length / 2];
+    for (int i = 0; i < keys.length; i++) {
+      long length = ascending ? runs[2 * i + 1] : Integer.MAX_VALUE - runs[2 * i + 1];
+      keys[i] = (length << 32) | (i & 0xFFFFFFFFL);
+    }
+    Arrays.sort(keys);
+    int[] sorted = new int[runs.length];
+    for (int i = 0; i < keys.length; i++) {
+      int r = (int) keys[i];
+      sorted[2 * i] = runs[2 * r];
+      sorted[2 * i + 1] = runs[2 * r + 1];
+    }
+    return sorted;
+  }
+
+}
@@ -0,0 +1,281 @@
+package model;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An in-memory map of the seats of the venue, telling which seats are free.
+ * Seats are identified by their number, as stored in the <code>SEAT</code>
+ * column of the <code>BOOKINGS</code> table, and are kept in a bitmap so that
+ * maps of 100k+ seats can be scanned in a few microseconds.
+ * <p>
+ * A maximal sequence of consecutive free seats is called a <i>run</i>. Runs
+ * are what grouped bookings are taken from, see
+ * {@link SeatAllocationStrategy}. Two consecutive seats separated by a
+ * <i>break</i> (the end of a row, an aisle) are not adjacent: no run spans a
+ * break, see {@link VenueLayout}.
+ * <p>
+ * This class is not thread-safe.
+ */
+public class SeatMap {
+
+  //
+  // FIELDS
+  //
+  private final int first;
+  private final int size;
+  private final long[] free;
+  private final long[] breaks;
+  private int freeCount;
+
+  //
+  // CONSTRUCTORS
+  //
+  /**
+   * Creates a new map of the specified seats, all of them taken.
+   *
+   * @param first the number of the first seat
+   * @param size the number of seats
+   */
+  public SeatMap(int first, int size) {
+    if (size < 0) {
+      throw new IllegalArgumentException("negative size: " + size);
+    }
+    this.first = first;
+    this.size = size;
+    this.free = new long[(size + 63) >>> 6];
+    this.breaks = new long[free.length];
+    this.freeCount = 0;
+  }
+
+  private SeatMap(SeatMap other) {
+    this.first = other.first;
+    this.size = other.size;
+    this.free = other.free.clone();
+    this.breaks = other.breaks.clone();
+    this.freeCount = other.freeCount;
+  }
+
+  //
+  // CLASS METHODS
+  //
+  /**
+   * Returns a map in which exactly the specified seats are free. The map
+   * spans the seats from the lowest to the highest specified seat.
+   *
+   * @param freeSeats the free seats, in any order; may be <code>null</code>
+   * @return the map of the free seats
+   */
+  public static SeatMap of(List<Integer> freeSeats) {
+    if (freeSeats == null || freeSeats.isEmpty()) {
+      return new SeatMap(0, 0);
+    }
+    int min = Integer.MAX_VALUE;
+    int max = Integer.MIN_VALUE;
+    for (int seat : freeSeats) {
+      min = Math.min(min, seat);
+      max = Math.max(max, seat);
+    }
+    SeatMap map = new SeatMap(min, max - min + 1);
+    for (int seat : freeSeats) {
+      map.release(seat);
+    }
+    return map;
+  }
+
+  //
+  // METHODS
+  //
+  /**
+   * Returns a copy of this map.
+   *
+   * @return a copy of this map
+   */
+  public SeatMap copy() {
+    return new SeatMap(this);
+  }
+
+  /**
+   * Returns the number of the first seat of the map.
+   *
+   * @return the number of the first seat
+   */
+  public int getFirst() {
+    return first;
+  }
+
+  /**
+   * Returns the number of the seat following the last seat of the map.
+   *
+   * @return the number of the seat following the last seat
+   */
+  public int getEnd() {
+    return first + size;
+  }
+
+  /**
+   * Returns the number of free seats.
+   *
+   * @return the number of free seats
+   */
+  public int getFreeCount() {
+    return freeCount;
+  }
+
+  /**
+   * Tells whether the specified seat is free. Seats outside the map are not.
+   *
+   * @param seat the seat number
+   * @return <code>true</code> if the seat is free
+   */
+  public boolean isFree(int seat) {
+    int i = seat - first;
+    return i >= 0 && i < size && (free[i >>> 6] & (1L << i)) != 0;
+  }
+
+  /**
+   * Marks the specified seat as free.
+   *
+   * @param seat the seat number
+   */
+  public void release(int seat) {
+    int i = index(seat);
+    long bit = 1L << i;
+    if ((free[i >>> 6] & bit) == 0) {
+      free[i >>> 6] |= bit;
+      freeCount++;
+    }
+  }
+
+  /**
+   * Marks the specified seat as taken.
+   *
+   * @param seat the seat number
+   */
+  public void take(int seat) {
+    int i = index(seat);
+    long bit = 1L << i;
+    if ((free[i >>> 6] & bit) != 0) {
+      free[i >>> 6] &= ~bit;
+      freeCount--;
+    }
+  }
+
+  /**
+   * Marks the specified seat as the last seat before a break: the seat and
+   * the next one are not adjacent.
+   *
+   * @param seat the seat number
+   */
+  public void setBreak(int seat) {
+    int i = index(seat);
+    breaks[i >>> 6] |= 1L << i;
+  }
+
+  /**
+   * Marks the specified seats as taken.
+   *
+   * @param seat the first seat to take
+   * @param count the number of consecutive seats to take
+   */
+  public void take(int seat, int count) {
+    for (int i = 0; i < count; i++) {
+      take(seat + i);
+    }
+  }
+
+  /**
+   * Returns the first free seat at or after the specified seat.
+   *
+   * @param seat the seat to start from
+   * @return the number of the first free seat, or {@link #getEnd()} if none
+   */
+  public int nextFree(int seat) {
+    return first + scan(Math.max(seat - first, 0), false);
+  }
+
+  /**
+   * Returns the first free seat at or after the specified seat, and before
+   * the specified limit.
+   *
+   * @param seat the seat to start from
+   * @param limit the seat at which to stop searching
+   * @return the number of the first free seat, or <code>limit</code> if none
+   */
+  public int nextFree(int seat, int limit) {
+    int end = Math.min(limit - first, size);
+    return Math.min(first + scan(free, Math.max(seat - first, 0), Math.max(end, 0), false), limit);
+  }
+
+  /**
+   * Returns the end of the run containing the specified free seat, that is,
+   * the first seat after it that is taken, beyond a break, or outside the map.
+   *
+   * @param seat a free seat
+   * @return the number of the seat following the run
+   */
+  public int runEnd(int seat) {
+    int i = seat - first;
+    int end = scan(i, true);
+    // on ne cherche une coupure qu'entre seat et la fin de la série de sièges libres
+    int lastBeforeBreak = scan(breaks, i, end, false);
+    return first + Math.min(end, lastBeforeBreak + 1);
+  }
+
+  @Override
+  public String toString() {
+    return "SeatMap{" + "first=" + first + ", size=" + size + ", free=" + freeCount + '}';
+  }
+
+  // Retourne l'index du premier siège libre (ou occupé si taken) à partir de i
+  private int scan(int i, boolean taken) {
+    return scan(free, i, size, taken);
+  }
+
+  // Retourne l'index du premier bit à 1 (ou à 0 si inverted) de bits entre i et limit
+  private int scan(long[] bits, int i, int limit, boolean inverted) {
+    if (i >= limit) {
+      return limit;
+    }
+    int w = i >>> 6;
+    int last = (limit - 1) >>> 6;
+    long word = (inverted ? ~bits[w] : bits[w]) & (-1L << i);
+    while (word == 0) {
+      if (++w > last) {
+        return limit;
+      }
+      word = inverted ? ~bits[w] : bits[w];
+    }
+    return Math.min((w << 6) + Long.numberOfTrailingZeros(word), limit);
+  }
+
+  private int index(int seat) {
+    int i = seat - first;
+    if (i < 0 || i >= size) {
+      throw new IndexOutOfBoundsException("seat " + seat + " not in " + this);
+    }
+    return i;
+  }
+
+  /**
+   * Returns the runs of the map, as pairs (start, length) packed in a single
+   * array.
+   *
+   * @return the runs of the map
+   */
+  int[] runs() {
+    int[] runs = new int[16];
+    int n = 0;
+    for (int seat = nextFree(first); seat < getEnd(); ) {
+      int end = runEnd(seat);
+      if (n == runs.length) {
+        runs = Arrays.copyOf(runs, n * 2);
+      }
+      runs[n++] = seat;
+      runs[n++] = end - seat;
+      seat = nextFree(end);
+    }
+    return Arrays.copyOf(runs, n);
+  }
+
+}
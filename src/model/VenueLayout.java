@@ -0,0 +1,450 @@
+package model;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Describes the physical layout of the venue: its sections, the rows of each
+ * section, and the aisles that split rows into <i>blocks</i> of adjacent
+ * seats. Seats are identified by their number, as stored in the
+ * <code>SEAT</code> column of the <code>BOOKINGS</code> table; each row holds
+ * a range of consecutive seat numbers.
+ * <p>
+ * Two seats are adjacent only if they belong to the same block: a grouped
+ * booking never straddles two rows or an aisle. The layout is immutable and
+ * is kept in primitive arrays, so that it can be loaded once and shared by
+ * all the threads of the application.
+ * <p>
+ * A layout is usually loaded from a text description, see
+ * {@link #load(Reader)}.
+ */
+public class VenueLayout {
+
+  //
+  // HELPER CLASSES
+  //
+  /**
+   * Collects the rows of a layout. Rows may be added in any order; the rows
+   * of a section are kept in the order they were added.
+   */
+  public static class Builder {
+
+    private final Map<String, List<int[]>> rows = new LinkedHashMap<>();
+    private final Map<String, List<String>> labels = new LinkedHashMap<>();
+
+    /**
+     * Adds a row to the layout.
+     *
+     * @param section the name of the section of the row
+     * @param row the label of the row within its section
+     * @param firstSeat the number of the first seat of the row
+     * @param count the number of seats of the row
+     * @param aisles the positions of the aisles of the row: an aisle at
+     * position <code>p</code> separates the <code>p</code> first seats of the
+     * row from the others
+     * @return this builder
+     */
+    public Builder addRow(String section, String row, int firstSeat, int count, int... aisles) {
+      if (count <= 0) {
+        throw new IllegalArgumentException("row " + section + "/" + row + ": no seats");
+      }
+      int[] sorted = aisles.clone();
+      Arrays.sort(sorted);
+      for (int i = 0; i < sorted.length; i++) {
+        if (sorted[i] <= 0 || sorted[i] >= count || (i > 0 && sorted[i] == sorted[i - 1])) {
+          throw new IllegalArgumentException("row " + section + "/" + row + ": bad aisle " + sorted[i]);
+        }
+      }
+      int[] description = new int[2 + aisles.length];
+      description[0] = firstSeat;
+      description[1] = count;
+      System.arraycopy(sorted, 0, description, 2, sorted.length);
+      if (!rows.containsKey(section)) {
+        rows.put(section, new ArrayList<int[]>());
+        labels.put(section, new ArrayList<String>());
+      }
+      rows.get(section).add(description);
+      labels.get(section).add(row);
+      return this;
+    }
+
+    /**
+     * Builds the layout.
+     *
+     * @return the layout
+     * @throws IllegalArgumentException if two rows share a seat number
+     */
+    public VenueLayout build() {
+      return new VenueLayout(this);
+    }
+  }
+
+  //
+  // FIELDS
+  //
+  private final String[] sectionNames;
+  private final int[] sectionFirstBlock;   // indexé par section, + 1 sentinelle
+  private final String[] rowLabels;
+  private final int[] rowSection;
+  private final int[] rowFirstBlock;       // indexé par rangée, + 1 sentinelle
+  private final int[] blockFirst;
+  private final int[] blockLength;
+  private final int[] blockRow;
+  private final int[] blocksBySeat;        // blocs triés par numéro de siège
+  private final int firstSeat;
+  private final int endSeat;
+  private final int seatCount;
+
+  //
+  // CONSTRUCTORS
+  //
+  private VenueLayout(Builder builder) {
+    int sections = builder.rows.size();
+    int rows = 0;
+    int blocks = 0;
+    for (List<int[]> r : builder.rows.values()) {
+      rows += r.size();
+      for (int[] row : r) {
+        blocks += row.length - 1;
+      }
+    }
+
+    sectionNames = builder.rows.keySet().toArray(new String[sections]);
+    sectionFirstBlock = new int[sections + 1];
+    rowLabels = new String[rows];
+    rowSection = new int[rows];
+    rowFirstBlock = new int[rows + 1];
+    blockFirst = new int[blocks];
+    blockLength = new int[blocks];
+    blockRow = new int[blocks];
+
+    int row = 0;
+    int block = 0;
+    int seats = 0;
+    for (int s = 0; s < sections; s++) {
+      sectionFirstBlock[s] = block;
+      List<int[]> r = builder.rows.get(sectionNames[s]);
+      List<String> l = builder.labels.get(sectionNames[s]);
+      for (int i = 0; i < r.size(); i++, row++) {
+        int[] description = r.get(i);
+        int[] cuts = Arrays.copyOfRange(description, 1, description.length);
+        cuts[0] = 0;
+        Arrays.sort(cuts);
+        rowLabels[row] = l.get(i);
+        rowSection[row] = s;
+        rowFirstBlock[row] = block;
+        for (int c = 0; c < cuts.length; c++, block++) {
+          int end = c + 1 < cuts.length ? cuts[c + 1] : description[1];
+          blockFirst[block] = description[0] + cuts[c];
+          blockLength[block] = end - cuts[c];
+          blockRow[block] = row;
+        }
+        seats += description[1];
+      }
+    }
+    sectionFirstBlock[sections] = block;
+    rowFirstBlock[rows] = block;
+    seatCount = seats;
+
+    // index des blocs par numéro de siège, pour retrouver le bloc d'un siège
+    long[] keys = new long[blocks];
+    for (int b = 0; b < blocks; b++) {
+      keys[b] = ((long) blockFirst[b] << 32) | b;
+    }
+    Arrays.sort(keys);
+    blocksBySeat = new int[blocks];
+    for (int b = 0; b < blocks; b++) {
+      blocksBySeat[b] = (int) keys[b];
+      if (b > 0) {
+        int previous = blocksBySeat[b - 1];
+        if (blockFirst[previous] + blockLength[previous] > blockFirst[blocksBySeat[b]]) {
+          throw new IllegalArgumentException("rows " + describe(previous) + " and "
+                  + describe(blocksBySeat[b]) + " overlap");
+        }
+      }
+    }
+    if (blocks == 0) {
+      firstSeat = 0;
+      endSeat = 0;
+    } else {
+      int last = blocksBySeat[blocks - 1];
+      firstSeat = blockFirst[blocksBySeat[0]];
+      endSeat = blockFirst[last] + blockLength[last];
+    }
+  }
+
+  //
+  // CLASS METHODS
+  //
+  /**
+   * Loads a layout from the specified text description. Each line describes
+   * a row, as follows:
+   * <pre>
+   * section row firstSeat seatCount [aisle ...]
+   * </pre>
+   * where <code>aisle</code> is the position of an aisle in the row, see
+   * {@link Builder#addRow}. Blank lines and lines starting with
+   * <code>#</code> are ignored.
+   *
+   * @param in the reader to load the layout from
+   * @return the layout
+   * @throws IOException if the description cannot be read
+   * @throws IllegalArgumentException if the description is malformed
+   */
+  public static VenueLayout load(Reader in) throws IOException {
+    Builder builder = new Builder();
+    BufferedReader reader = new BufferedReader(in);
+    int number = 0;
+    for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+      number++;
+      line = line.trim();
+      if (line.isEmpty() || line.startsWith("#")) {
+        continue;
+      }
+      String[] fields = line.split("\\s+");
+      if (fields.length < 4) {
+        throw new IllegalArgumentException("line " + number + ": expected section row firstSeat seatCount");
+      }
+      try {
+        int[] aisles = new int[fields.length - 4];
+        for (int i = 0; i < aisles.length; i++) {
+          aisles[i] = Integer.parseInt(fields[4 + i]);
+        }
+        builder.addRow(fields[0], fields[1], Integer.parseInt(fields[2]), Integer.parseInt(fields[3]), aisles);
+      } catch (IllegalArgumentException e) {
+        throw new IllegalArgumentException("line " + number + ": " + e.getMessage(), e);
+      }
+    }
+    return builder.build();
+  }
+
+  /**
+   * Returns a regular layout: every section has the same number of rows,
+   * every row the same number of seats, and aisles are evenly spaced. Seats
+   * are numbered from 1, section by section and row by row.
+   *
+   * @param sections the number of sections
+   * @param rows the number of rows per section
+   * @param seatsPerRow the number of seats per row
+   * @param aisleEvery the number of seats between two aisles; 0 for no aisle
+   * @return the layout
+   */
+  public static VenueLayout grid(int sections, int rows, int seatsPerRow, int aisleEvery) {
+    int aisles = aisleEvery > 0 ? (seatsPerRow - 1) / aisleEvery : 0;
+    int[] positions = new int[aisles];
+    for (int i = 0; i < aisles; i++) {
+      positions[i] = (i + 1) * aisleEvery;
+    }
+    Builder builder = new Builder();
+    int seat = 1;
+    for (int s = 0; s < sections; s++) {
+      for (int r = 0; r < rows; r++) {
+        builder.addRow("S" + (s + 1), "R" + (r + 1), seat, seatsPerRow, positions);
+        seat += seatsPerRow;
+      }
+    }
+    return builder.build();
+  }
+
+  //
+  // METHODS
+  //
+  /**
+   * Returns a map of the seats of this layout in which exactly the specified
+   * seats are free. The breaks of the map are set at the end of every row and
+   * at every aisle. Seats that are not part of the layout are ignored.
+   *
+   * @param freeSeats the free seats, in any order; may be <code>null</code>
+   * @return the map of the free seats
+   */
+  public SeatMap seatMap(List<Integer> freeSeats) {
+    SeatMap map = new SeatMap(firstSeat, endSeat - firstSeat);
+    for (int b = 0; b < blockFirst.length; b++) {
+      map.setBreak(blockFirst[b] + blockLength[b] - 1);
+    }
+    if (freeSeats != null) {
+      for (int seat : freeSeats) {
+        if (blockOf(seat) != -1) {
+          map.release(seat);
+        }
+      }
+    }
+    return map;
+  }
+
+  /**
+   * Returns the number of seats of the layout.
+   *
+   * @return the number of seats
+   */
+  public int getSeatCount() {
+    return seatCount;
+  }
+
+  /**
+   * Returns the number of sections of the layout.
+   *
+   * @return the number of sections
+   */
+  public int getSectionCount() {
+    return sectionNames.length;
+  }
+
+  /**
+   * Returns the name of the specified section.
+   *
+   * @param section the index of the section
+   * @return the name of the section
+   */
+  public String getSectionName(int section) {
+    return sectionNames[section];
+  }
+
+  /**
+   * Returns the index of the specified section.
+   *
+   * @param name the name of the section
+   * @return the index of the section, or -1 if there is no such section
+   */
+  public int getSection(String name) {
+    for (int s = 0; s < sectionNames.length; s++) {
+      if (sectionNames[s].equals(name)) {
+        return s;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Returns the number of rows of the layout.
+   *
+   * @return the number of rows
+   */
+  public int getRowCount() {
+    return rowLabels.length;
+  }
+
+  /**
+   * Returns the row of the specified seat.
+   *
+   * @param seat the seat number
+   * @return the index of the row, or -1 if the seat is not part of the layout
+   */
+  public int getRow(int seat) {
+    int block = blockOf(seat);
+    return block == -1 ? -1 : blockRow[block];
+  }
+
+  /**
+   * Returns the label of the specified row, e.g. "A".
+   *
+   * @param row the index of the row
+   * @return the label of the row
+   */
+  public String getRowLabel(int row) {
+    return rowLabels[row];
+  }
+
+  /**
+   * Returns the section of the specified row.
+   *
+   * @param row the index of the row
+   * @return the index of the section
+   */
+  public int getRowSection(int row) {
+    return rowSection[row];
+  }
+
+  /**
+   * Tells whether the specified object is a layout with the same sections,
+   * rows, blocks and seat numbers as this one.
+   *
+   * @param obj the object to compare with
+   * @return <code>true</code> if the layouts are the same
+   */
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (!(obj instanceof VenueLayout)) {
+      return false;
+    }
+    // les autres champs se déduisent de ceux-ci
+    VenueLayout other = (VenueLayout) obj;
+    return Arrays.equals(sectionNames, other.sectionNames) && Arrays.equals(rowLabels, other.rowLabels)
+            && Arrays.equals(rowSection, other.rowSection) && Arrays.equals(blockFirst, other.blockFirst)
+            && Arrays.equals(blockLength, other.blockLength) && Arrays.equals(blockRow, other.blockRow);
+  }
+
+  @Override
+  public int hashCode() {
+    int hash = Arrays.hashCode(sectionNames);
+    hash = 31 * hash + Arrays.hashCode(rowLabels);
+    hash = 31 * hash + Arrays.hashCode(blockFirst);
+    return 31 * hash + Arrays.hashCode(blockLength);
+  }
+
+  @Override
+  public String toString() {
+    return "VenueLayout{" + "sections=" + sectionNames.length + ", rows=" + rowLabels.length
+            + ", seats=" + seatCount + '}';
+  }
+
+  //
+  // BLOCKS
+  //
+  // Les blocs (portions de rangée entre deux allées) sont numérotés section
+  //  par section puis par rangée; ceux d'une section s vont de
+  //  sectionFirstBlock[s] (inclus) à sectionFirstBlock[s + 1] (exclu), et de
+  //  même pour les rangées avec rowFirstBlock.
+
+  int getBlockCount() {
+    return blockFirst.length;
+  }
+
+  int getBlockFirst(int block) {
+    return blockFirst[block];
+  }
+
+  int getBlockLength(int block) {
+    return blockLength[block];
+  }
+
+  int getSectionFirstBlock(int section) {
+    return sectionFirstBlock[section];
+  }
+
+  int getRowFirstBlock(int row) {
+    return rowFirstBlock[row];
+  }
+
+  int blockOf(int seat) {
+    int low = 0;
+    int high = blocksBySeat.length - 1;
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      int block = blocksBySeat[middle];
+      if (seat < blockFirst[block]) {
+        high = middle - 1;
+      } else if (seat >= blockFirst[block] + blockLength[block]) {
+        low = middle + 1;
+      } else {
+        return block;
+      }
+    }
+    return -1;
+  }
+
+  private String describe(int block) {
+    int row = blockRow[block];
+    return sectionNames[rowSection[row]] + "/" + rowLabels[row];
+  }
+
+}
@@ -0,0 +1,293 @@
+package model;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The free seats of a {@link VenueLayout}, indexed for grouped bookings. For
+ * each block of the layout (the part of a row between two aisles), the index
+ * keeps the length of the longest run of free seats, so that a request for
+ * <i>K adjacent seats in the same row</i> skips every block that cannot hold
+ * it without looking at its seats.
+ * <p>
+ * The index is kept up to date by marking the seats taken and released one
+ * by one, so that it is built only once. An index shared by all the
+ * {@link DataAccess} objects connected to the same database is returned by
+ * {@link #forDatabase(String, VenueLayout)}, one per database and distinct
+ * layout (equal layouts share the same index): it is not loaded until
+ * {@link #reload(List)} is called, and can be invalidated when it no longer
+ * reflects the database.
+ * <p>
+ * This class is not thread-safe: the users of a shared index synchronize on
+ * it.
+ */
+public class VenueSeats {
+
+  //
+  // CLASS FIELDS
+  //
+  private static final ConcurrentHashMap<List<Object>, VenueSeats> INDEXES = new ConcurrentHashMap<>();
+
+  //
+  // FIELDS
+  //
+  private final VenueLayout layout;
+  private final int[] longestRun;
+  private SeatMap seats;
+  private boolean loaded = false;
+
+  //
+  // CONSTRUCTORS
+  //
+  /**
+   * Creates a new index of the specified layout, in which exactly the
+   * specified seats are free.
+   *
+   * @param layout the layout of the venue
+   * @param freeSeats the free seats, in any order; may be <code>null</code>
+   */
+  public VenueSeats(VenueLayout layout, List<Integer> freeSeats) {
+    this.layout = layout;
+    this.longestRun = new int[layout.getBlockCount()];
+    reload(freeSeats);
+  }
+
+  // Index vide, non chargé, voir forDatabase()
+  private VenueSeats(VenueLayout layout) {
+    this.layout = layout;
+    this.longestRun = new int[layout.getBlockCount()];
+    this.seats = layout.seatMap(null);
+  }
+
+  //
+  // CLASS METHODS
+  //
+  /**
+   * Returns the index of the specified layout shared by all the users of the
+   * specified database. Layouts are compared by value, so that reloading the
+   * same layout does not create a new index. The index is created not loaded.
+   *
+   * @param url the url of the database
+   * @param layout the layout of the venue
+   * @return the index of the layout for the database
+   */
+  public static VenueSeats forDatabase(String url, VenueLayout layout) {
+    List<Object> key = Arrays.<Object>asList(url, layout);
+    VenueSeats index = INDEXES.get(key);
+    if (index == null) {
+      VenueSeats created = new VenueSeats(layout);
+      index = INDEXES.putIfAbsent(key, created);
+      if (index == null) {
+        index = created;
+      }
+    }
+    return index;
+  }
+
+  //
+  // METHODS
+  //
+  /**
+   * Rebuilds the index so that exactly the specified seats are free.
+   *
+   * @param freeSeats the free seats, in any order; may be <code>null</code>
+   */
+  public void reload(List<Integer> freeSeats) {
+    seats = layout.seatMap(freeSeats);
+    for (int block = 0; block < longestRun.length; block++) {
+      summarize(block);
+    }
+    loaded = true;
+  }
+
+  /**
+   * Tells whether the index has been loaded since it was created or last
+   * invalidated.
+   *
+   * @return <code>true</code> if the index is loaded
+   */
+  public boolean isLoaded() {
+    return loaded;
+  }
+
+  /**
+   * Marks the index as no longer reflecting the free seats: it must be
+   * reloaded before use.
+   */
+  public void invalidate() {
+    loaded = false;
+  }
+
+  /**
+   * Returns the layout of the venue.
+   *
+   * @return the layout of the venue
+   */
+  public VenueLayout getLayout() {
+    return layout;
+  }
+
+  /**
+   * Returns the number of free seats.
+   *
+   * @return the number of free seats
+   */
+  public int getFreeCount() {
+    return seats.getFreeCount();
+  }
+
+  /**
+   * Tells whether the specified seat is free.
+   *
+   * @param seat the seat number
+   * @return <code>true</code> if the seat is free
+   */
+  public boolean isFree(int seat) {
+    return seats.isFree(seat);
+  }
+
+  /**
+   * Marks the specified seat as free.
+   *
+   * @param seat the seat number
+   * @throws IllegalArgumentException if the seat is not part of the layout
+   */
+  public void release(int seat) {
+    int block = block(seat);
+    seats.release(seat);
+    summarize(block);
+  }
+
+  /**
+   * Marks the specified seat as taken.
+   *
+   * @param seat the seat number
+   * @throws IllegalArgumentException if the seat is not part of the layout
+   */
+  public void take(int seat) {
+    int block = block(seat);
+    seats.take(seat);
+    summarize(block);
+  }
+
+  /**
+   * Finds the specified number of adjacent free seats in the same row,
+   * preferably in the specified section. Within a section, rows are searched
+   * in the order of the layout, and within a row the tightest run that can
+   * hold the seats is chosen.
+   *
+   * @param count the number of adjacent seats to find
+   * @param preferredSection the name of the section to search first;
+   * <code>null</code> if any section will do
+   * @return the first of the seats found, or -1 if no row can hold them
+   */
+  public int findGrouped(int count, String preferredSection) {
+    if (count <= 0 || count > seats.getFreeCount()) {
+      return -1;
+    }
+    int preferred = preferredSection == null ? -1 : layout.getSection(preferredSection);
+    if (preferred != -1) {
+      int seat = findGrouped(count, layout.getSectionFirstBlock(preferred), layout.getSectionFirstBlock(preferred + 1));
+      if (seat != -1) {
+        return seat;
+      }
+    }
+    for (int section = 0; section < layout.getSectionCount(); section++) {
+      if (section != preferred) {
+        int seat = findGrouped(count, layout.getSectionFirstBlock(section), layout.getSectionFirstBlock(section + 1));
+        if (seat != -1) {
+          return seat;
+        }
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Finds and takes the specified number of adjacent free seats in the same
+   * row, see {@link #findGrouped(int, String)}.
+   *
+   * @param count the number of adjacent seats to take
+   * @param preferredSection the name of the section to search first;
+   * <code>null</code> if any section will do
+   * @return the seats taken, or <code>null</code> if no row can hold them
+   */
+  public int[] takeGrouped(int count, String preferredSection) {
+    int first = findGrouped(count, preferredSection);
+    if (first == -1) {
+      return null;
+    }
+    int[] taken = new int[count];
+    for (int i = 0; i < count; i++) {
+      taken[i] = first + i;
+      seats.take(first + i);
+    }
+    summarize(layout.blockOf(first));
+    return taken;
+  }
+
+  /**
+   * Returns the length of the longest run of free seats of the specified
+   * row.
+   *
+   * @param row the index of the row
+   * @return the length of the longest run of the row
+   */
+  public int getLongestRun(int row) {
+    int longest = 0;
+    for (int block = layout.getRowFirstBlock(row); block < layout.getRowFirstBlock(row + 1); block++) {
+      longest = Math.max(longest, longestRun[block]);
+    }
+    return longest;
+  }
+
+  @Override
+  public String toString() {
+    return "VenueSeats{" + "layout=" + layout + ", free=" + seats.getFreeCount() + '}';
+  }
+
+  private int findGrouped(int count, int fromBlock, int toBlock) {
+    for (int block = fromBlock; block < toBlock; block++) {
+      if (longestRun[block] < count) {
+        continue;
+      }
+      // le bloc peut accueillir le groupe: on y choisit la série la plus juste
+      int best = -1;
+      int bestLength = Integer.MAX_VALUE;
+      int end = layout.getBlockFirst(block) + layout.getBlockLength(block);
+      for (int seat = seats.nextFree(layout.getBlockFirst(block), end); seat < end; ) {
+        int runEnd = seats.runEnd(seat);
+        int length = runEnd - seat;
+        if (length >= count && length < bestLength) {
+          best = seat;
+          bestLength = length;
+        }
+        seat = seats.nextFree(runEnd, end);
+      }
+      return best;
+    }
+    return -1;
+  }
+
+  // Recalcule la plus longue série de sièges libres du bloc
+  private void summarize(int block) {
+    int longest = 0;
+    int end = layout.getBlockFirst(block) + layout.getBlockLength(block);
+    for (int seat = seats.nextFree(layout.getBlockFirst(block), end); seat < end; ) {
+      int runEnd = seats.runEnd(seat);
+      longest = Math.max(longest, runEnd - seat);
+      seat = seats.nextFree(runEnd, end);
+    }
+    longestRun[block] = longest;
+  }
+
+  private int block(int seat) {
+    int block = layout.blockOf(seat);
+    if (block == -1) {
+      throw new IllegalArgumentException("seat " + seat + " not in " + layout);
+    }
+    return block;
+  }
+
+}
@@ -0,0 +1,220 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * The booking requests that could not be satisfied, waiting for seats to be
+ * freed. Requests are served by priority, then in arrival order; a request
+ * that cannot be satisfied does not block the requests behind it.
+ * <p>
+ * When a cancellation frees seats, the requests are matched against the free
+ * seats in memory, and those that fit are booked and notified to their
+ * {@link WaitlistListener}, see {@link DataAccess#setWaitlist(Waitlist)}.
+ * Customers therefore do not need to poll the available seats.
+ * <p>
+ * This class is thread-safe, and a waitlist is meant to be shared by all the
+ * {@link DataAccess} objects connected to the same database.
+ */
+public class Waitlist {
+
+  //
+  // HELPER CLASSES
+  //
+  /**
+   * A waiting booking request.
+   */
+  public static final class Request {
+
+    private final String customer;
+    private final int childCount;
+    private final int adultCount;
+    private final boolean groupedSeats;
+    private final int priority;
+    private final long sequence;
+    private final WaitlistListener listener;
+
+    Request(String customer, int childCount, int adultCount, boolean groupedSeats, int priority,
+            long sequence, WaitlistListener listener) {
+      this.customer = customer;
+      this.childCount = childCount;
+      this.adultCount = adultCount;
+      this.groupedSeats = groupedSeats;
+      this.priority = priority;
+      this.sequence = sequence;
+      this.listener = listener;
+    }
+
+    @Override
+    public String toString() {
+      return "Request{" + "customer=" + customer + ", childCount=" + childCount + ", adultCount=" + adultCount
+              + ", groupedSeats=" + groupedSeats + ", priority=" + priority + '}';
+    }
+
+    public String getCustomer() {
+      return customer;
+    }
+
+    public int getChildCount() {
+      return childCount;
+    }
+
+    public int getAdultCount() {
+      return adultCount;
+    }
+
+    public boolean isGroupedSeats() {
+      return groupedSeats;
+    }
+
+    public int getPriority() {
+      return priority;
+    }
+
+    WaitlistListener getListener() {
+      return listener;
+    }
+  }
+
+  /**
+   * A request matched with free seats.
+   */
+  public static final class Match {
+
+    final Request request;
+    final int[] seats;
+
+    Match(Request request, int[] seats) {
+      this.request = request;
+      this.seats = seats;
+    }
+
+    public Request getRequest() {
+      return request;
+    }
+
+    public int[] getSeats() {
+      return seats.clone();
+    }
+  }
+
+  //
+  // FIELDS
+  //
+  // par priorité décroissante, puis par ordre d'arrivée
+  private final TreeSet<Request> requests = new TreeSet<>(new Comparator<Request>() {
+    @Override
+    public int compare(Request r1, Request r2) {
+      if (r1.priority != r2.priority) {
+        return r1.priority > r2.priority ? -1 : 1;
+      }
+      return Long.compare(r1.sequence, r2.sequence);
+    }
+  });
+  private long sequence = 0;
+
+  //
+  // METHODS
+  //
+  /**
+   * Adds a request to the waitlist.
+   *
+   * @param customer the customer who makes the booking
+   * @param childCount the number of seats to book for children
+   * @param adultCount the number of seats to book for adults
+   * @param groupedSeats <code>true</code> if the booked seats must be grouped,
+   * and <code>false</code> otherwise
+   * @param priority the priority of the request; higher priorities are
+   * served first
+   * @param listener the listener to notify when the request is booked
+   * @return the request added
+   */
+  public synchronized Request add(String customer, int childCount, int adultCount, boolean groupedSeats,
+          int priority, WaitlistListener listener) {
+    if (childCount < 0 || adultCount < 0 || childCount + adultCount == 0) {
+      throw new IllegalArgumentException("bad seat counts: " + childCount + ", " + adultCount);
+    }
+    Request request = new Request(customer, childCount, adultCount, groupedSeats, priority, sequence++, listener);
+    requests.add(request);
+    return request;
+  }
+
+  /**
+   * Removes a request from the waitlist, e.g. because the customer gave up.
+   *
+   * @param request the request to remove
+   * @return <code>true</code> if the request was still waiting
+   */
+  public synchronized boolean remove(Request request) {
+    return requests.remove(request);
+  }
+
+  /**
+   * Returns the number of waiting requests.
+   *
+   * @return the number of waiting requests
+   */
+  public synchronized int size() {
+    return requests.size();
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "Waitlist{" + "size=" + requests.size() + '}';
+  }
+
+  /**
+   * Tells which waiting requests the specified free seats would serve, in
+   * priority order, without removing them from the waitlist. The matched
+   * seats are marked as taken in the map.
+   *
+   * @param seats the map of the free seats
+   * @param strategy the strategy used to pick the seats of each request
+   * @return the matched requests, in priority order
+   */
+  public synchronized List<Match> preview(SeatMap seats, SeatAllocationStrategy strategy) {
+    return match(seats, strategy, false);
+  }
+
+  /**
+   * Matches the waiting requests against the specified free seats, in
+   * priority order, and removes the matched requests from the waitlist: the
+   * caller must book them, or {@link #restore(Request) restore} them. The
+   * matched seats are marked as taken in the map.
+   *
+   * @param seats the map of the free seats
+   * @param strategy the strategy used to pick the seats of each request
+   * @return the matched requests, in priority order
+   */
+  synchronized List<Match> match(SeatMap seats, SeatAllocationStrategy strategy) {
+    return match(seats, strategy, true);
+  }
+
+  /**
+   * Puts back a matched request that could not be booked.
+   *
+   * @param request the request
+   */
+  synchronized void restore(Request request) {
+    requests.add(request);
+  }
+
+  private List<Match> match(SeatMap seats, SeatAllocationStrategy strategy, boolean remove) {
+    List<Match> matches = new ArrayList<>();
+    for (Iterator<Request> it = requests.iterator(); it.hasNext() && seats.getFreeCount() > 0; ) {
+      Request request = it.next();
+      int[] allocated = strategy.allocate(seats, request.childCount + request.adultCount, request.groupedSeats);
+      if (allocated != null) {
+        matches.add(new Match(request, allocated));
+        if (remove) {
+          it.remove();
+        }
+      }
+    }
+    return matches;
+  }
+
+}
@@ -0,0 +1,17 @@
+package model;
+
+/**
+ * Receives the bookings made on behalf of a request of a {@link Waitlist}.
+ */
+public interface WaitlistListener {
+
+  /**
+   * Called when the specified waiting request has been booked. The method is
+   * called by the thread that freed the seats, and must return quickly.
+   *
+   * @param request the request
+   * @param booking the booking made for the request
+   */
+  void booked(Waitlist.Request request, BookingInfo booking);
+
+}
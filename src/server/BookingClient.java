@@ -0,0 +1,319 @@
+package server;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+
+import model.BookingInfo;
+import model.DataAccessException;
+
+/**
+ * A client of a {@link BookingServer}, over a single connection.
+ * <p>
+ * The methods ending with <code>Async</code> pipeline their request: the
+ * request is buffered and the method returns at once; the buffered requests
+ * are sent together by {@link #flush()}, or when the buffer is full, and the
+ * returned future is completed when the response arrives. A server error
+ * completes the future with a {@link DataAccessException}, a connection
+ * failure with an {@link IOException}. The other methods send their request
+ * immediately and wait for the response.
+ * <p>
+ * This class is thread-safe. The responses are read by a dedicated thread,
+ * which also completes the futures: dependent actions should not block.
+ */
+public class BookingClient implements Closeable {
+
+  //
+  // CONSTANTS
+  //
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  //
+  // FIELDS
+  //
+  private final SocketChannel channel;
+  private final ConcurrentLinkedQueue<CompletableFuture<Object>> pending = new ConcurrentLinkedQueue<>();
+  private final Thread reader;
+  private ByteBuffer out = ByteBuffer.allocate(BUFFER_SIZE);
+  private volatile IOException failure = null;
+
+  //
+  // CONSTRUCTORS
+  //
+  /**
+   * Creates a new client connected to the specified server.
+   *
+   * @param host the host of the server
+   * @param port the port of the server
+   * @throws IOException if the server cannot be reached
+   */
+  public BookingClient(String host, int port) throws IOException {
+    this.channel = SocketChannel.open(new InetSocketAddress(host, port));
+    channel.socket().setTcpNoDelay(true);
+    this.reader = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        receive();
+      }
+    }, "booking-client-" + channel.socket().getLocalPort());
+    reader.setDaemon(true);
+    reader.start();
+  }
+
+  //
+  // METHODS
+  //
+  /**
+   * Books the specified number of seats for the specified customer, see
+   * {@link BookingService#book(String, int, int, boolean)}.
+   *
+   * @param customer the customer who makes the booking
+   * @param childCount the number of seats to book for children
+   * @param adultCount the number of seats to book for adults
+   * @param groupedSeats <code>true</code> if the booked seats must be grouped,
+   * and <code>false</code> otherwise
+   * @return the future booking, <code>null</code> if it could not be
+   * satisfied
+   */
+  public CompletableFuture<BookingInfo> bookAsync(String customer, int childCount, int adultCount, boolean groupedSeats) {
+    byte[] name = Protocol.encode(customer);
+    synchronized (this) {
+      out = Protocol.ensure(out, 16 + (name == null ? 0 : name.length));
+      int start = Protocol.startFrame(out);
+      out.put(Protocol.BOOK);
+      Protocol.putString(out, name);
+      out.putInt(childCount).putInt(adultCount).put((byte) (groupedSeats ? 1 : 0));
+      Protocol.endFrame(out, start);
+      return this.<BookingInfo>enqueue();
+    }
+  }
+
+  /**
+   * Cancels, in whole or part, the bookings of the specified customer, see
+   * {@link BookingService#cancel(String, int, int)}.
+   *
+   * @param customer the customer who cancels
+   * @param childCount the number of child seats to cancel, -1 if all are to be
+   * cancelled
+   * @param adultCount the number of adult seats to cancel, -1 if all are to be
+   * cancelled
+   * @return the future remaining bookings of the customer
+   */
+  public CompletableFuture<BookingInfo> cancelAsync(String customer, int childCount, int adultCount) {
+    byte[] name = Protocol.encode(customer);
+    synchronized (this) {
+      out = Protocol.ensure(out, 15 + (name == null ? 0 : name.length));
+      int start = Protocol.startFrame(out);
+      out.put(Protocol.CANCEL);
+      Protocol.putString(out, name);
+      out.putInt(childCount).putInt(adultCount);
+      Protocol.endFrame(out, start);
+      return this.<BookingInfo>enqueue();
+    }
+  }
+
+  /**
+   * Returns the free seats, see {@link BookingService#getAvailableSeats()}.
+   *
+   * @return the future free seats
+   */
+  public CompletableFuture<int[]> getAvailableSeatsAsync() {
+    synchronized (this) {
+      out = Protocol.ensure(out, 5);
+      int start = Protocol.startFrame(out);
+      out.put(Protocol.AVAILABLE);
+      Protocol.endFrame(out, start);
+      return this.<int[]>enqueue();
+    }
+  }
+
+  /**
+   * Returns the bookings of the specified customer, see
+   * {@link BookingService#getBookingInfo(String)}.
+   *
+   * @param customer the customer, or <code>null</code>
+   * @return the future bookings
+   */
+  public CompletableFuture<BookingInfo> getBookingInfoAsync(String customer) {
+    byte[] name = Protocol.encode(customer);
+    synchronized (this) {
+      out = Protocol.ensure(out, 7 + (name == null ? 0 : name.length));
+      int start = Protocol.startFrame(out);
+      out.put(Protocol.INFO);
+      Protocol.putString(out, name);
+      Protocol.endFrame(out, start);
+      return this.<BookingInfo>enqueue();
+    }
+  }
+
+  /**
+   * Sends the buffered requests.
+   *
+   * @throws IOException if the requests cannot be sent
+   */
+  public synchronized void flush() throws IOException {
+    if (failure != null) {
+      throw failure;
+    }
+    out.flip();
+    try {
+      while (out.hasRemaining()) {
+        channel.write(out);
+      }
+    } catch (IOException e) {
+      fail(e);
+      throw e;
+    } finally {
+      out.clear();
+    }
+  }
+
+  public BookingInfo book(String customer, int childCount, int adultCount, boolean groupedSeats) throws DataAccessException, IOException {
+    CompletableFuture<BookingInfo> result = bookAsync(customer, childCount, adultCount, groupedSeats);
+    flush();
+    return get(result);
+  }
+
+  public BookingInfo cancel(String customer, int childCount, int adultCount) throws DataAccessException, IOException {
+    CompletableFuture<BookingInfo> result = cancelAsync(customer, childCount, adultCount);
+    flush();
+    return get(result);
+  }
+
+  public int[] getAvailableSeats() throws DataAccessException, IOException {
+    CompletableFuture<int[]> result = getAvailableSeatsAsync();
+    flush();
+    return get(result);
+  }
+
+  public BookingInfo getBookingInfo(String customer) throws DataAccessException, IOException {
+    CompletableFuture<BookingInfo> result = getBookingInfoAsync(customer);
+    flush();
+    return get(result);
+  }
+
+  /**
+   * Closes the connection. The requests waiting for their response fail.
+   *
+   * @throws IOException if the connection cannot be closed
+   */
+  @Override
+  public void close() throws IOException {
+    fail(new IOException("connection closed"));
+    channel.close();
+  }
+
+  @Override
+  public String toString() {
+    return "BookingClient{" + "channel=" + channel + ", pending=" + pending.size() + '}';
+  }
+
+  /**
+   * Waits for the specified result.
+   *
+   * @param result the future result
+   * @return the result
+   * @throws DataAccessException if the server failed to handle the request
+   * @throws IOException if the response did not arrive
+   */
+  public static <T> T get(CompletableFuture<T> result) throws DataAccessException, IOException {
+    try {
+      return result.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("interrupted while waiting for the response", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof DataAccessException) {
+        throw (DataAccessException) e.getCause();
+      }
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException(e.getCause());
+    }
+  }
+
+  // Enregistre la réponse attendue pour la requête tout juste ajoutée au tampon
+  //  (appelé sous le verrou, pour que les réponses arrivent dans l'ordre de la file)
+  @SuppressWarnings("unchecked")
+  private <T> CompletableFuture<T> enqueue() {
+    CompletableFuture<Object> result = new CompletableFuture<>();
+    pending.add(result);
+    if (failure != null) {
+      // la connexion a échoué, éventuellement pendant l'ajout
+      out.clear();
+      fail(failure);
+    } else if (out.position() >= BUFFER_SIZE) {
+      try {
+        flush();
+      } catch (IOException e) {
+        // la requête a échoué avec les autres, voir fail()
+      }
+    }
+    return (CompletableFuture<T>) (CompletableFuture<?>) result;
+  }
+
+  // Boucle du thread de lecture des réponses
+  private void receive() {
+    ByteBuffer in = ByteBuffer.allocate(BUFFER_SIZE);
+    try {
+      while (true) {
+        if (channel.read(in) == -1) {
+          throw new EOFException("connection closed by the server");
+        }
+        in.flip();
+        while (Protocol.hasFrame(in)) {
+          int end = in.position() + 4 + in.getInt();
+          CompletableFuture<Object> result = pending.poll();
+          if (result == null) {
+            throw new IOException("unexpected response");
+          }
+          byte status = in.get();
+          switch (status) {
+            case Protocol.BOOKING:
+              result.complete(Protocol.getBooking(in));
+              break;
+            case Protocol.SEATS:
+              result.complete(Protocol.getSeats(in));
+              break;
+            case Protocol.NONE:
+              result.complete(null);
+              break;
+            case Protocol.ERROR:
+              result.completeExceptionally(new DataAccessException(Protocol.getString(in)));
+              break;
+            default:
+              throw new IOException("bad status: " + status);
+          }
+          in.position(end);
+        }
+        in.compact();
+        if (!in.hasRemaining()) {
+          in = Protocol.ensure(in, in.capacity());
+        }
+      }
+    } catch (IOException e) {
+      fail(e);
+    } catch (RuntimeException e) {
+      fail(new IOException("bad response", e));
+    }
+  }
+
+  // Fait échouer toutes les requêtes en attente de réponse
+  private void fail(IOException e) {
+    if (failure == null) {
+      failure = e;
+    }
+    CompletableFuture<Object> result;
+    while ((result = pending.poll()) != null) {
+      result.completeExceptionally(failure);
+    }
+  }
+
+}
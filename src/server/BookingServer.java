@@ -0,0 +1,456 @@
+package server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import model.BookingInfo;
+import model.DataAccessException;
+
+/**
+ * A server exposing a {@link BookingService} over TCP, with the binary
+ * protocol described in {@link Protocol}; see {@link BookingClient} for the
+ * client side.
+ * <p>
+ * A single thread accepts the connections and reads and decodes the
+ * requests, using non-blocking I/O, so that many connections can be served
+ * by few threads. The requests of a connection are handled one after the
+ * other, in the order they were received, either by the I/O thread itself
+ * or by a pool of worker threads: the former suits a service kept in memory,
+ * the latter a service that blocks, such as {@link DataAccessBookingService}.
+ * <p>
+ * Requests are pipelined: all the requests read at once from a connection
+ * are handled as a batch, and their responses are written with as few
+ * system calls as possible. A connection is no longer read while too many of
+ * its requests are waiting to be handled, or too many of its responses to be
+ * sent, so that a client that does not read its responses cannot exhaust
+ * the memory of the server.
+ */
+public class BookingServer {
+
+  //
+  // CONSTANTS
+  //
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final int MAX_QUEUED_REQUESTS = 4096;
+  private static final int MAX_PENDING_OUTPUT = 4 * 1024 * 1024;
+
+  //
+  // HELPER CLASSES
+  //
+  /**
+   * A decoded request.
+   */
+  private static final class Request {
+
+    final byte operation;
+    final String customer;
+    final int childCount;
+    final int adultCount;
+    final boolean groupedSeats;
+
+    Request(byte operation, String customer, int childCount, int adultCount, boolean groupedSeats) {
+      this.operation = operation;
+      this.customer = customer;
+      this.childCount = childCount;
+      this.adultCount = adultCount;
+      this.groupedSeats = groupedSeats;
+    }
+  }
+
+  /**
+   * A client connection. The input buffer is only used by the I/O thread;
+   * the requests are handled by at most one thread at a time, and the
+   * output buffer is guarded by the connection.
+   */
+  private final class Connection implements Runnable {
+
+    final SocketChannel channel;
+    final SelectionKey key;
+    ByteBuffer in = ByteBuffer.allocate(BUFFER_SIZE);
+    ByteBuffer out = ByteBuffer.allocate(BUFFER_SIZE);
+    final ConcurrentLinkedQueue<Request> requests = new ConcurrentLinkedQueue<>();
+    final AtomicInteger queued = new AtomicInteger();
+    final AtomicBoolean scheduled = new AtomicBoolean();
+    int[] scratch = new int[64];
+    volatile boolean paused = false;
+
+    Connection(SocketChannel channel, SelectionKey key) {
+      this.channel = channel;
+      this.key = key;
+    }
+
+    /**
+     * Reads the available bytes and queues the complete requests (I/O
+     * thread).
+     */
+    void read() throws IOException {
+      if (channel.read(in) == -1) {
+        close();
+        return;
+      }
+      in.flip();
+      int count = 0;
+      while (Protocol.hasFrame(in)) {
+        int end = in.position() + 4 + in.getInt();
+        int limit = in.limit();
+        in.limit(end);
+        requests.add(decode(in));
+        in.limit(limit);
+        in.position(end);
+        count++;
+      }
+      in.compact();
+      if (!in.hasRemaining()) {
+        // une trame plus grande que le tampon
+        in = Protocol.ensure(in, in.capacity());
+      }
+      if (count > 0) {
+        if (queued.addAndGet(count) >= MAX_QUEUED_REQUESTS) {
+          updateInterest();
+        }
+        if (scheduled.compareAndSet(false, true)) {
+          executor.execute(this);
+        }
+      }
+    }
+
+    /**
+     * Handles the queued requests, then sends their responses (I/O thread or
+     * worker thread).
+     */
+    @Override
+    public void run() {
+      do {
+        Request request;
+        while ((request = requests.poll()) != null) {
+          queued.decrementAndGet();
+          handle(request);
+        }
+        flush();
+        scheduled.set(false);
+      } while (!requests.isEmpty() && scheduled.compareAndSet(false, true));
+    }
+
+    private void handle(Request request) {
+      BookingInfo booking = null;
+      int[] seats = null;
+      String error = null;
+      try {
+        switch (request.operation) {
+          case Protocol.BOOK:
+            booking = service.book(request.customer, request.childCount, request.adultCount, request.groupedSeats);
+            break;
+          case Protocol.CANCEL:
+            booking = service.cancel(request.customer, request.childCount, request.adultCount);
+            break;
+          case Protocol.AVAILABLE:
+            seats = service.getAvailableSeats();
+            break;
+          default:
+            booking = service.getBookingInfo(request.customer);
+            break;
+        }
+      } catch (DataAccessException | RuntimeException e) {
+        error = e.getMessage() == null ? e.toString() : e.getMessage();
+      }
+
+      synchronized (this) {
+        if (error != null) {
+          out = Protocol.ensure(out, 5 + Protocol.sizeOf(error));
+          int start = Protocol.startFrame(out);
+          out.put(Protocol.ERROR);
+          Protocol.putString(out, error.length() > Protocol.MAX_STRING / 3 ? error.substring(0, Protocol.MAX_STRING / 3) : error);
+          Protocol.endFrame(out, start);
+        } else if (seats != null) {
+          out = Protocol.ensure(out, 5 + Protocol.sizeOfSeats(seats.length));
+          int start = Protocol.startFrame(out);
+          out.put(Protocol.SEATS);
+          Protocol.putSeats(out, seats, seats.length);
+          Protocol.endFrame(out, start);
+        } else if (booking != null) {
+          if (scratch.length < booking.getSeatCount()) {
+            scratch = new int[booking.getSeatCount()];
+          }
+          out = Protocol.ensure(out, 21 + Protocol.sizeOf(booking.getCustomer()) + Protocol.sizeOfSeats(booking.getSeatCount()));
+          int start = Protocol.startFrame(out);
+          out.put(Protocol.BOOKING);
+          Protocol.putBooking(out, booking, scratch);
+          Protocol.endFrame(out, start);
+        } else {
+          out = Protocol.ensure(out, 5);
+          int start = Protocol.startFrame(out);
+          out.put(Protocol.NONE);
+          Protocol.endFrame(out, start);
+        }
+        if (out.position() < BUFFER_SIZE) {
+          return;
+        }
+      }
+      flush();
+    }
+
+    /**
+     * Writes as much of the pending responses as the socket accepts, and
+     * leaves the rest to the I/O thread.
+     */
+    void flush() {
+      boolean pending;
+      synchronized (this) {
+        try {
+          out.flip();
+          channel.write(out);
+          out.compact();
+        } catch (IOException e) {
+          close();
+          return;
+        }
+        pending = out.position() > 0;
+      }
+      if (pending || paused) {
+        updates.add(this);
+        selector.wakeup();
+      }
+    }
+
+    /**
+     * Writes the pending responses (I/O thread).
+     */
+    synchronized void write() throws IOException {
+      out.flip();
+      channel.write(out);
+      out.compact();
+      updateInterest();
+    }
+
+    /**
+     * Sets the events of interest of the connection, depending on its
+     * pending requests and responses (I/O thread).
+     */
+    synchronized void updateInterest() {
+      if (!key.isValid()) {
+        return;
+      }
+      paused = queued.get() >= MAX_QUEUED_REQUESTS || out.position() > MAX_PENDING_OUTPUT;
+      key.interestOps((paused ? 0 : SelectionKey.OP_READ) | (out.position() > 0 ? SelectionKey.OP_WRITE : 0));
+    }
+
+    void close() {
+      key.cancel();
+      try {
+        channel.close();
+      } catch (IOException e) {
+        // la connexion est abandonnée de toute façon
+      }
+    }
+  }
+
+  //
+  // FIELDS
+  //
+  private final BookingService service;
+  private final int port;
+  private final int workers;
+  private final ConcurrentLinkedQueue<Connection> updates = new ConcurrentLinkedQueue<>();
+  private Executor executor;
+  private Selector selector;
+  private ServerSocketChannel server;
+  private Thread thread;
+  private volatile boolean running = false;
+
+  //
+  // CONSTRUCTORS
+  //
+  /**
+   * Creates a new server. The server accepts connections once started.
+   *
+   * @param service the service to expose
+   * @param port the port to listen on; 0 to pick any free port
+   * @param workers the number of worker threads handling the requests; 0 to
+   * handle them in the I/O thread
+   */
+  public BookingServer(BookingService service, int port, int workers) {
+    if (workers < 0) {
+      throw new IllegalArgumentException("bad worker count: " + workers);
+    }
+    this.service = service;
+    this.port = port;
+    this.workers = workers;
+  }
+
+  //
+  // METHODS
+  //
+  /**
+   * Starts listening and serving the requests.
+   *
+   * @throws IOException if the port cannot be listened on
+   */
+  public synchronized void start() throws IOException {
+    if (running) {
+      return;
+    }
+    selector = Selector.open();
+    server = ServerSocketChannel.open();
+    server.bind(new InetSocketAddress(port));
+    server.configureBlocking(false);
+    server.register(selector, SelectionKey.OP_ACCEPT);
+    if (workers == 0) {
+      executor = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+          command.run();
+        }
+      };
+    } else {
+      executor = Executors.newFixedThreadPool(workers, new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+          Thread thread = new Thread(r, "booking-worker-" + count.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    }
+    running = true;
+    thread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        serve();
+      }
+    }, "booking-server-" + getPort());
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Stops the server and closes all the connections. The requests being
+   * handled are allowed to complete.
+   *
+   * @throws InterruptedException if interrupted while waiting for the server
+   * to stop
+   */
+  public synchronized void stop() throws InterruptedException {
+    if (!running) {
+      return;
+    }
+    running = false;
+    selector.wakeup();
+    thread.join();
+    if (executor instanceof ExecutorService) {
+      ((ExecutorService) executor).shutdown();
+      ((ExecutorService) executor).awaitTermination(10, TimeUnit.SECONDS);
+    }
+    for (SelectionKey key : selector.keys()) {
+      if (key.attachment() instanceof Connection) {
+        ((Connection) key.attachment()).close();
+      }
+    }
+    try {
+      server.close();
+      selector.close();
+    } catch (IOException e) {
+      // le serveur est arrêté de toute façon
+    }
+  }
+
+  /**
+   * Returns the port the server listens on.
+   *
+   * @return the port, or the port requested if the server is not started
+   */
+  public int getPort() {
+    return server == null ? port : server.socket().getLocalPort();
+  }
+
+  @Override
+  public String toString() {
+    return "BookingServer{" + "port=" + getPort() + ", workers=" + workers + ", service=" + service + '}';
+  }
+
+  // Boucle du thread d'entrées-sorties
+  private void serve() {
+    while (running) {
+      try {
+        selector.select();
+      } catch (IOException e) {
+        System.out.println("booking server: select failed: " + e);
+        return;
+      }
+      Connection connection;
+      while ((connection = updates.poll()) != null) {
+        connection.updateInterest();
+      }
+      for (Iterator<SelectionKey> it = selector.selectedKeys().iterator(); it.hasNext(); ) {
+        SelectionKey key = it.next();
+        it.remove();
+        if (!key.isValid()) {
+          continue;
+        }
+        if (key.isAcceptable()) {
+          accept();
+          continue;
+        }
+        connection = (Connection) key.attachment();
+        try {
+          if (key.isWritable()) {
+            connection.write();
+          }
+          if (key.isValid() && key.isReadable()) {
+            connection.read();
+          }
+        } catch (IOException | RuntimeException e) {
+          // connexion fermée par le client, ou requête mal formée
+          connection.close();
+        }
+      }
+    }
+  }
+
+  private void accept() {
+    try {
+      SocketChannel channel = server.accept();
+      if (channel == null) {
+        return;
+      }
+      channel.configureBlocking(false);
+      channel.socket().setTcpNoDelay(true);
+      SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+      key.attach(new Connection(channel, key));
+    } catch (IOException e) {
+      System.out.println("booking server: accept failed: " + e);
+    }
+  }
+
+  private static Request decode(ByteBuffer frame) {
+    byte operation = frame.get();
+    switch (operation) {
+      case Protocol.BOOK:
+        return new Request(operation, Protocol.getString(frame), frame.getInt(), frame.getInt(), frame.get() != 0);
+      case Protocol.CANCEL:
+        return new Request(operation, Protocol.getString(frame), frame.getInt(), frame.getInt(), false);
+      case Protocol.AVAILABLE:
+        return new Request(operation, null, 0, 0, false);
+      case Protocol.INFO:
+        return new Request(operation, Protocol.getString(frame), 0, 0, false);
+      default:
+        throw new IllegalStateException("bad operation: " + operation);
+    }
+  }
+
+}
@@ -0,0 +1,63 @@
+package server;
+
+import model.BookingInfo;
+import model.DataAccessException;
+
+/**
+ * The booking operations exposed by a {@link BookingServer}. They follow the
+ * corresponding methods of {@link model.DataAccess}; see
+ * {@link MemoryBookingService} for the differences of the in-memory
+ * implementation. Implementations must be thread-safe.
+ *
+ * @see DataAccessBookingService
+ * @see MemoryBookingService
+ */
+public interface BookingService {
+
+  /**
+   * Books the specified number of seats for the specified customer.
+   *
+   * @param customer the customer who makes the booking
+   * @param childCount the number of seats to book for children
+   * @param adultCount the number of seats to book for adults
+   * @param groupedSeats <code>true</code> if the booked seats must be grouped,
+   * and <code>false</code> otherwise
+   * @return the booking, or <code>null</code> if it could not be satisfied
+   * @throws DataAccessException if an unrecoverable error occurs
+   */
+  BookingInfo book(String customer, int childCount, int adultCount, boolean groupedSeats) throws DataAccessException;
+
+  /**
+   * Cancels, in whole or part, the bookings of the specified customer.
+   *
+   * @param customer the customer who cancels
+   * @param childCount the number of child seats to cancel, -1 if all are to be
+   * cancelled
+   * @param adultCount the number of adult seats to cancel, -1 if all are to be
+   * cancelled
+   * @return the remaining bookings of the customer, or <code>null</code> if
+   * one of the parameters was incorrect
+   * @throws DataAccessException if an unrecoverable error occurs
+   */
+  BookingInfo cancel(String customer, int childCount, int adultCount) throws DataAccessException;
+
+  /**
+   * Returns the free seats, in increasing order.
+   *
+   * @return the free seats
+   * @throws DataAccessException if an unrecoverable error occurs
+   */
+  int[] getAvailableSeats() throws DataAccessException;
+
+  /**
+   * Returns the bookings of the specified customer, or the latest order if
+   * the customer is <code>null</code>.
+   *
+   * @param customer the customer, or <code>null</code>
+   * @return the bookings; if there are none, a booking info without customer,
+   * seat nor date
+   * @throws DataAccessException if an unrecoverable error occurs
+   */
+  BookingInfo getBookingInfo(String customer) throws DataAccessException;
+
+}
@@ -0,0 +1,112 @@
+package server;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import model.BookingInfo;
+import model.DataAccess;
+import model.DataAccessException;
+
+/**
+ * A booking service backed by the database, through a pool of
+ * {@link DataAccess} objects: each operation borrows an object, so that as
+ * many operations as there are objects run concurrently, each on its own
+ * connection.
+ */
+public class DataAccessBookingService implements BookingService {
+
+  //
+  // FIELDS
+  //
+  private final BlockingQueue<DataAccess> pool;
+
+  //
+  // CONSTRUCTORS
+  //
+  /**
+   * Creates a new service using the specified data access objects. The
+   * objects must not be used by anyone else.
+   *
+   * @param stores the data access objects to use
+   */
+  public DataAccessBookingService(DataAccess... stores) {
+    if (stores.length == 0) {
+      throw new IllegalArgumentException("no data access object");
+    }
+    this.pool = new ArrayBlockingQueue<>(stores.length);
+    for (DataAccess store : stores) {
+      pool.add(store);
+    }
+  }
+
+  //
+  // METHODS
+  //
+  @Override
+  public BookingInfo book(String customer, int childCount, int adultCount, boolean groupedSeats) throws DataAccessException {
+    DataAccess store = borrow();
+    try {
+      return store.book(customer, childCount, adultCount, groupedSeats);
+    } catch (SQLException e) {
+      throw new DataAccessException(e);
+    } finally {
+      pool.add(store);
+    }
+  }
+
+  @Override
+  public BookingInfo cancel(String customer, int childCount, int adultCount) throws DataAccessException {
+    DataAccess store = borrow();
+    try {
+      return store.cancel(customer, childCount, adultCount);
+    } finally {
+      pool.add(store);
+    }
+  }
+
+  @Override
+  public int[] getAvailableSeats() throws DataAccessException {
+    DataAccess store = borrow();
+    try {
+      ArrayList<Integer> seats = store.getAvailableSeats();
+      if (seats == null) {
+        return new int[0];
+      }
+      int[] available = new int[seats.size()];
+      for (int i = 0; i < available.length; i++) {
+        available[i] = seats.get(i);
+      }
+      Arrays.sort(available);
+      return available;
+    } catch (SQLException e) {
+      throw new DataAccessException(e);
+    } finally {
+      pool.add(store);
+    }
+  }
+
+  @Override
+  public BookingInfo getBookingInfo(String customer) throws DataAccessException {
+    DataAccess store = borrow();
+    try {
+      return store.getBookingInfo(customer);
+    } catch (SQLException e) {
+      throw new DataAccessException(e);
+    } finally {
+      pool.add(store);
+    }
+  }
+
+  private DataAccess borrow() throws DataAccessException {
+    try {
+      return pool.take();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new DataAccessException(e);
+    }
+  }
+
+}
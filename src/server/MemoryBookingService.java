@@ -0,0 +1,194 @@
+package server;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+import model.BookingInfo;
+import model.DataAccess;
+import model.DataAccessException;
+import model.SeatAllocationStrategy;
+import model.SeatMap;
+
+/**
+ * A booking service kept in memory. It stands for the database when a
+ * server is run without one, e.g. for testing and benchmarking; the prices
+ * are those of {@link DataAccess}.
+ * <p>
+ * The operations follow those of {@link DataAccessBookingService}, with the
+ * following differences:
+ * <ul>
+ * <li>a cancellation of more seats of a class than the customer holds is
+ * rejected, whereas {@link DataAccess#cancel(String, int, int)} only rejects
+ * a cancellation whose refund, computed from the requested counts, exceeds
+ * the amount paid, and cancels the seats the customer holds;</li>
+ * <li>the amount of a booking info is computed from the seats held, whereas
+ * the database keeps it in the <code>ORDERS</code> table, updated by
+ * triggers;</li>
+ * <li>nothing is persisted.</li>
+ * </ul>
+ */
+public class MemoryBookingService implements BookingService {
+
+  //
+  // HELPER CLASSES
+  //
+  /**
+   * The seats booked by a customer.
+   */
+  private static final class Order {
+
+    int[] seats = new int[4];
+    int[] classes = new int[4];
+    int count = 0;
+    long timestamp;
+
+    void add(int seat, int cl) {
+      if (count == seats.length) {
+        seats = Arrays.copyOf(seats, 2 * count);
+        classes = Arrays.copyOf(classes, 2 * count);
+      }
+      seats[count] = seat;
+      classes[count] = cl;
+      count++;
+    }
+
+    int count(int cl) {
+      int n = 0;
+      for (int i = 0; i < count; i++) {
+        if (classes[i] == cl) {
+          n++;
+        }
+      }
+      return n;
+    }
+  }
+
+  //
+  // FIELDS
+  //
+  private final SeatMap free;
+  private final HashMap<String, Order> orders = new HashMap<>();
+  private SeatAllocationStrategy allocationStrategy = SeatAllocationStrategy.FIRST_FIT;
+  private String latest = null;
+
+  //
+  // CONSTRUCTORS
+  //
+  /**
+   * Creates a new service for the specified seats, all of them free.
+   *
+   * @param first the number of the first seat
+   * @param count the number of seats
+   */
+  public MemoryBookingService(int first, int count) {
+    this.free = new SeatMap(first, count);
+    for (int seat = first; seat < first + count; seat++) {
+      free.release(seat);
+    }
+  }
+
+  //
+  // METHODS
+  //
+  /**
+   * Sets the strategy used to pick the seats of a booking.
+   *
+   * @param strategy the strategy
+   */
+  public synchronized void setAllocationStrategy(SeatAllocationStrategy strategy) {
+    this.allocationStrategy = strategy;
+  }
+
+  @Override
+  public synchronized BookingInfo book(String customer, int childCount, int adultCount, boolean groupedSeats) throws DataAccessException {
+    if (customer == null || childCount < 0 || adultCount < 0 || childCount + adultCount == 0) {
+      return null;
+    }
+    int[] seats = allocationStrategy.allocate(free, childCount + adultCount, groupedSeats);
+    if (seats == null) {
+      return null;
+    }
+
+    Order order = orders.get(customer);
+    if (order == null) {
+      order = new Order();
+      orders.put(customer, order);
+    }
+    int[] classes = DataAccess.seatClasses(childCount, adultCount, groupedSeats);
+    for (int i = 0; i < seats.length; i++) {
+      order.add(seats[i], classes[i]);
+    }
+    order.timestamp = System.currentTimeMillis();
+    latest = customer;
+    long amount = childCount * DataAccess.CHILD_PRICE + adultCount * DataAccess.ADULT_PRICE;
+    return new BookingInfo(customer, amount * 100, order.timestamp, seats);
+  }
+
+  @Override
+  public synchronized BookingInfo cancel(String customer, int childCount, int adultCount) throws DataAccessException {
+    Order order = customer == null ? null : orders.get(customer);
+    if (order == null || childCount < -1 || adultCount < -1
+            || childCount > order.count(DataAccess.CHILD) || adultCount > order.count(DataAccess.ADULT)) {
+      return null;
+    }
+
+    // libère les derniers sièges réservés de chaque classe
+    int children = childCount == -1 ? Integer.MAX_VALUE : childCount;
+    int adults = adultCount == -1 ? Integer.MAX_VALUE : adultCount;
+    int n = order.count;
+    for (int i = order.count - 1; i >= 0; i--) {
+      if (order.classes[i] == DataAccess.CHILD && children > 0) {
+        children--;
+      } else if (order.classes[i] == DataAccess.ADULT && adults > 0) {
+        adults--;
+      } else {
+        continue;
+      }
+      free.release(order.seats[i]);
+      order.classes[i] = 0;
+    }
+    order.count = 0;
+    for (int i = 0; i < n; i++) {
+      if (order.classes[i] != 0) {
+        order.seats[order.count] = order.seats[i];
+        order.classes[order.count] = order.classes[i];
+        order.count++;
+      }
+    }
+    order.timestamp = System.currentTimeMillis();
+    return info(customer, order);
+  }
+
+  @Override
+  public synchronized int[] getAvailableSeats() throws DataAccessException {
+    int[] seats = new int[free.getFreeCount()];
+    int n = 0;
+    for (int seat = free.nextFree(free.getFirst()); seat < free.getEnd(); seat = free.nextFree(seat)) {
+      for (int end = free.runEnd(seat); seat < end; seat++) {
+        seats[n++] = seat;
+      }
+    }
+    return seats;
+  }
+
+  @Override
+  public synchronized BookingInfo getBookingInfo(String customer) throws DataAccessException {
+    String c = customer == null ? latest : customer;
+    Order order = c == null ? null : orders.get(c);
+    // comme DataAccess: sans commande, une réservation vide sans client ni date
+    return order == null ? new BookingInfo(null, 0, BookingInfo.NO_DATE, new int[0]) : info(c, order);
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "MemoryBookingService{" + "free=" + free + ", customers=" + orders.size() + '}';
+  }
+
+  private static BookingInfo info(String customer, Order order) {
+    long amount = order.count(DataAccess.CHILD) * DataAccess.CHILD_PRICE + order.count(DataAccess.ADULT) * DataAccess.ADULT_PRICE;
+    int[] seats = Arrays.copyOf(order.seats, order.count);
+    Arrays.sort(seats);
+    return new BookingInfo(customer, amount * 100, order.timestamp, seats);
+  }
+
+}
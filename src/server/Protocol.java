@@ -0,0 +1,268 @@
+package server;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import model.BookingInfo;
+
+/**
+ * The binary protocol spoken between a {@link BookingClient} and a
+ * {@link BookingServer}.
+ * <p>
+ * Every message is a frame: its length on 4 bytes, followed by that many
+ * bytes. Integers are big-endian. A request starts with its operation code:
+ * <pre>
+ * BOOK      (1) customer:string child:int adult:int grouped:byte
+ * CANCEL    (2) customer:string child:int adult:int
+ * AVAILABLE (3)
+ * INFO      (4) customer:string
+ * </pre>
+ * and a response with its status:
+ * <pre>
+ * BOOKING (0) customer:string amountCents:long timestamp:long seats
+ * SEATS   (1) seats
+ * NONE    (2)                       the operation returned null
+ * ERROR   (3) message:string
+ * </pre>
+ * A string is its length in UTF-8 bytes on 2 unsigned bytes (0xFFFF for
+ * <code>null</code>) followed by the bytes; a list of seats is its number of
+ * runs of consecutive seats on 4 bytes, followed by the first seat and the
+ * length of each run, so that grouped seats and large blocks of free seats
+ * take 8 bytes.
+ * <p>
+ * Requests can be pipelined: a client may send any number of requests
+ * without waiting for the responses, and the server answers the requests of
+ * a connection in the order it received them.
+ */
+final class Protocol {
+
+  //
+  // CONSTANTS
+  //
+  static final byte BOOK = 1;
+  static final byte CANCEL = 2;
+  static final byte AVAILABLE = 3;
+  static final byte INFO = 4;
+
+  static final byte BOOKING = 0;
+  static final byte SEATS = 1;
+  static final byte NONE = 2;
+  static final byte ERROR = 3;
+
+  static final int MAX_FRAME = 16 * 1024 * 1024;
+  static final int NULL_STRING = 0xFFFF;
+  static final int MAX_STRING = NULL_STRING - 1;
+
+  //
+  // CONSTRUCTORS
+  //
+  private Protocol() {
+  }
+
+  //
+  // CLASS METHODS
+  //
+  /**
+   * Returns a buffer holding the content of the specified buffer (in write
+   * mode) with room for the specified number of bytes, growing it if needed.
+   *
+   * @param buffer the buffer
+   * @param size the number of bytes to make room for
+   * @return the buffer, or a larger copy of it
+   */
+  static ByteBuffer ensure(ByteBuffer buffer, int size) {
+    if (buffer.remaining() >= size) {
+      return buffer;
+    }
+    int capacity = buffer.capacity();
+    while (capacity - buffer.position() < size) {
+      capacity *= 2;
+    }
+    ByteBuffer larger = ByteBuffer.allocate(capacity);
+    buffer.flip();
+    larger.put(buffer);
+    return larger;
+  }
+
+  /**
+   * Tells whether the specified buffer (in read mode) starts with a complete
+   * frame.
+   *
+   * @param buffer the buffer
+   * @return <code>true</code> if a complete frame is available
+   * @throws IllegalStateException if the frame is too large
+   */
+  static boolean hasFrame(ByteBuffer buffer) {
+    if (buffer.remaining() < 4) {
+      return false;
+    }
+    int length = buffer.getInt(buffer.position());
+    if (length < 0 || length > MAX_FRAME) {
+      throw new IllegalStateException("bad frame length: " + length);
+    }
+    return buffer.remaining() >= 4 + length;
+  }
+
+  /**
+   * Starts a frame: reserves its length, to be set by
+   * {@link #endFrame(ByteBuffer, int)}.
+   *
+   * @param buffer the buffer
+   * @return the position of the frame
+   */
+  static int startFrame(ByteBuffer buffer) {
+    int start = buffer.position();
+    buffer.putInt(0);
+    return start;
+  }
+
+  /**
+   * Ends the frame started at the specified position.
+   *
+   * @param buffer the buffer
+   * @param start the position of the frame
+   */
+  static void endFrame(ByteBuffer buffer, int start) {
+    buffer.putInt(start, buffer.position() - start - 4);
+  }
+
+  /**
+   * Returns the maximum number of bytes taken by the specified string.
+   *
+   * @param s the string
+   * @return the maximum size of the string
+   */
+  static int sizeOf(String s) {
+    return 2 + (s == null ? 0 : 3 * s.length());
+  }
+
+  /**
+   * Returns the maximum number of bytes taken by the specified number of
+   * seats.
+   *
+   * @param count the number of seats
+   * @return the maximum size of the seats
+   */
+  static int sizeOfSeats(int count) {
+    return 4 + 8 * count;
+  }
+
+  /**
+   * Encodes the specified string in UTF-8.
+   *
+   * @param s the string
+   * @return the bytes of the string, or <code>null</code> if it is
+   * <code>null</code>
+   * @throws IllegalArgumentException if the string is too long
+   */
+  static byte[] encode(String s) {
+    if (s == null) {
+      return null;
+    }
+    byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+    if (bytes.length > MAX_STRING) {
+      throw new IllegalArgumentException("string too long: " + bytes.length + " bytes");
+    }
+    return bytes;
+  }
+
+  static void putString(ByteBuffer buffer, String s) {
+    putString(buffer, encode(s));
+  }
+
+  static void putString(ByteBuffer buffer, byte[] bytes) {
+    if (bytes == null) {
+      buffer.putShort((short) NULL_STRING);
+      return;
+    }
+    buffer.putShort((short) bytes.length);
+    buffer.put(bytes);
+  }
+
+  /**
+   * Reads a string.
+   *
+   * @param buffer the buffer, positioned at the length of the string
+   * @return the string, or <code>null</code>
+   * @throws IllegalStateException if the string is longer than the rest of
+   * the buffer
+   */
+  static String getString(ByteBuffer buffer) {
+    int length = buffer.getShort() & 0xFFFF;
+    if (length == NULL_STRING) {
+      return null;
+    }
+    if (length > buffer.remaining()) {
+      throw new IllegalStateException("bad string length: " + length);
+    }
+    String s = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+    buffer.position(buffer.position() + length);
+    return s;
+  }
+
+  /**
+   * Writes the specified seats as runs of consecutive seats.
+   *
+   * @param buffer the buffer
+   * @param seats the seats, in the <code>count</code> first elements of the
+   * array
+   * @param count the number of seats
+   */
+  static void putSeats(ByteBuffer buffer, int[] seats, int count) {
+    int start = buffer.position();
+    buffer.putInt(0);
+    int runs = 0;
+    for (int i = 0; i < count; ) {
+      int j = i + 1;
+      while (j < count && seats[j] == seats[j - 1] + 1) {
+        j++;
+      }
+      buffer.putInt(seats[i]).putInt(j - i);
+      runs++;
+      i = j;
+    }
+    buffer.putInt(start, runs);
+  }
+
+  static int[] getSeats(ByteBuffer buffer) {
+    int runs = buffer.getInt();
+    int start = buffer.position();
+    int count = 0;
+    for (int r = 0; r < runs; r++) {
+      count += buffer.getInt(start + 8 * r + 4);
+    }
+    int[] seats = new int[count];
+    int n = 0;
+    for (int r = 0; r < runs; r++) {
+      int first = buffer.getInt();
+      int length = buffer.getInt();
+      for (int i = 0; i < length; i++) {
+        seats[n++] = first + i;
+      }
+    }
+    return seats;
+  }
+
+  /**
+   * Writes the specified booking, without its status.
+   *
+   * @param buffer the buffer
+   * @param booking the booking
+   * @param scratch an array holding at least the seats of the booking
+   */
+  static void putBooking(ByteBuffer buffer, BookingInfo booking, int[] scratch) {
+    putString(buffer, booking.getCustomer());
+    buffer.putLong(booking.getAmountCents());
+    buffer.putLong(booking.getTimestamp());
+    int count = booking.copySeats(scratch, 0);
+    putSeats(buffer, scratch, count);
+  }
+
+  static BookingInfo getBooking(ByteBuffer buffer) {
+    String customer = getString(buffer);
+    long amountCents = buffer.getLong();
+    long timestamp = buffer.getLong();
+    return new BookingInfo(customer, amountCents, timestamp, getSeats(buffer));
+  }
+
+}